@@ -0,0 +1,70 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+// blocks a virtual thread on every request and background read. Only built with the java21 profile, and picked by
+// Fetcher when present. Each group of requests sent at once runs in a scope of its own: an executor which is closed
+// before sendAll returns, so no request outlives the call that made it, and a failed request cancels the others in
+// its group
+final class VirtualThreadFetcher extends Fetcher {
+	// reads started in the background each get a virtual thread, however many there are
+	private final ExecutorService background = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("data-fetch-", 0).factory());
+
+	// sends every request with the blocking send on its own virtual thread, with at most 'maxInFlight' of them
+	// waiting on the server at once
+	@Override
+	List<HttpResponse<String>> sendAll(HttpClient client, List<HttpRequest> requests, int maxInFlight,
+			Metrics.Timer latency) throws IOException, InterruptedException {
+		var slots = new Semaphore(maxInFlight);
+		// closing the scope waits for every request, including any cancelled because another failed
+		try (var scope = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("data-fetch-", 0).factory())) {
+			var futures = new ArrayList<Future<HttpResponse<String>>>();
+			for (var request : requests) {
+				futures.add(scope.submit(() -> {
+					slots.acquire();
+					try {
+						var startTime = System.nanoTime();
+						var response = client.send(request, BodyHandlers.ofString());
+						latency.recordSince(startTime);
+						return response;
+					} finally {
+						slots.release();
+					}
+				}));
+			}
+
+			// collect the responses in the same order as the requests
+			var responses = new ArrayList<HttpResponse<String>>();
+			try {
+				for (var future : futures) {
+					responses.add(future.get());
+				}
+				return responses;
+			} catch (ExecutionException e) {
+				cancel(futures);
+				throw requestFailure(e.getCause());
+			} catch (InterruptedException e) {
+				cancel(futures);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	<T> CompletableFuture<T> fetch(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, this.background);
+	}
+}
@@ -0,0 +1,153 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Polygon;
+
+import uk.ac.ed.inf.aqmaps.DirectoryDataSource;
+import uk.ac.ed.inf.aqmaps.Obstacle;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+// loads the fixtures the benchmarks run on.
+// the buildings are read from no-fly-zones.geojson (-Daqmaps.bench.buildings=<file>, relative to where the benchmarks
+// are run from). Sensor sets are read from a recorded copy of the web server's files (-Daqmaps.bench.data=<dir>, laid
+// out as maps/yyyy/mm/dd/air-quality-data.json and words/w1/w2/w3/details.json). Without a recording, sets of 33
+// sensors are made up at random (always the same ones) inside the confinement area and outside the buildings.
+//
+// build and run with:
+//   mvn -P benchmarks package -DskipTests
+//   java -jar target/aqmaps-0.0.1-SNAPSHOT-benchmarks.jar -prof gc
+// properties have to reach the forked benchmark JVMs, which also need java.awt.geom opened for gson, e.g.
+//   -jvmArgsAppend "--add-opens=java.desktop/java.awt.geom=ALL-UNNAMED -Daqmaps.bench.data=<dir>"
+public final class BenchmarkData {
+	// the start positions the performance tests use
+	public static final Point2D[] START_POSITIONS = {
+			new Point2D.Double(55.9444, -3.1878),
+			new Point2D.Double(55.946232, -3.192472),
+			new Point2D.Double(55.946232, -3.184320),
+			new Point2D.Double(55.942618, -3.192472),
+			new Point2D.Double(55.942618, -3.184320)
+	};
+	// the recorded dates to use, one sensor set each
+	private static final String[] DATES = {"2020/01/01", "2020/04/15", "2020/08/24", "2021/02/11", "2021/07/04", "2021/12/25"};
+	// the confinement area the made up sensors are placed in
+	private static final double MIN_LAT = 55.942617;
+	private static final double MAX_LAT = 55.946233;
+	private static final double MIN_LNG = -3.192473;
+	private static final double MAX_LNG = -3.184319;
+
+	// do not allow this class to be instantiated
+	private BenchmarkData() {}
+
+	// reads the buildings from the no-fly-zones file
+	public static List<Obstacle> buildings() {
+		var file = Paths.get(System.getProperty("aqmaps.bench.buildings", "no-fly-zones.geojson"));
+		var buildings = new ArrayList<Obstacle>();
+		for (var f : FeatureCollection.fromJson(read(file)).features()) {
+			buildings.add(new Obstacle((Polygon) f.geometry()));
+		}
+		return buildings;
+	}
+
+	// returns one set of sensors for each recorded date, or made up ones if there is no recording
+	public static List<List<Sensor>> sensorSets(List<Obstacle> buildings) {
+		var sets = new ArrayList<List<Sensor>>();
+		var data = System.getProperty("aqmaps.bench.data");
+		var random = new Random(42);
+		for (var date : DATES) {
+			sets.add(data == null ? madeUpSensors(buildings, random) : recordedSensors(Paths.get(data), date));
+		}
+		return sets;
+	}
+
+	// returns random moves of one step inside the confinement area, as {fromLng, fromLat, toLng, toLat} one after
+	// the other. Every move starts outside the buildings, but some of them cross one, as they would when the drone
+	// is avoiding them
+	public static double[] randomMoves(List<Obstacle> buildings, int count) {
+		var random = new Random(7);
+		var moves = new double[count * 4];
+		var m = 0;
+		while (m < count) {
+			var lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+			var lng = MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG);
+			if (insideAny(buildings, lat, lng)) {
+				continue;
+			}
+			var direction = Math.toRadians(random.nextInt(36) * 10);
+			moves[m * 4] = lng;
+			moves[m * 4 + 1] = lat;
+			moves[m * 4 + 2] = lng + 0.0003 * Math.cos(direction);
+			moves[m * 4 + 3] = lat + 0.0003 * Math.sin(direction);
+			m++;
+		}
+		return moves;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// reads the sensors of one date, given as yyyy/mm/dd, from a recording of the web server's files
+	private static List<Sensor> recordedSensors(Path data, String date) {
+		var d = date.split("/");
+		return DirectoryDataSource.open(data).readLocatedSensors(d[2], d[1], d[0]);
+	}
+
+	// makes up 33 sensors at random points which are not inside any building
+	private static List<Sensor> madeUpSensors(List<Obstacle> buildings, Random random) {
+		var sensors = new ArrayList<Sensor>();
+		var gson = new Gson();
+		while (sensors.size() < 33) {
+			var lat = MIN_LAT + 0.0001 + random.nextDouble() * (MAX_LAT - MIN_LAT - 0.0002);
+			var lng = MIN_LNG + 0.0001 + random.nextDouble() * (MAX_LNG - MIN_LNG - 0.0002);
+			if (insideAny(buildings, lat, lng)) {
+				continue;
+			}
+			var json = new JsonObject();
+			json.addProperty("location", "made.up.sensor" + sensors.size());
+			json.addProperty("battery", 100.0);
+			json.addProperty("reading", String.valueOf(random.nextInt(256)));
+			var sensor = gson.fromJson(json, Sensor.class);
+			sensor.setCoordinates(new Point2D.Double(lat, lng));
+			sensors.add(sensor);
+		}
+		return sensors;
+	}
+
+	// checks if the point is inside any of the buildings, by counting how many edges a line going east from it crosses
+	private static boolean insideAny(List<Obstacle> buildings, double lat, double lng) {
+		for (var b : buildings) {
+			var inside = false;
+			for (var i = 0; i < b.getPointCount(); i++) {
+				var j = (i + b.getPointCount() - 1) % b.getPointCount();
+				if ((b.getLat(i) > lat) != (b.getLat(j) > lat)
+						&& lng < (b.getLng(j) - b.getLng(i)) * (lat - b.getLat(i)) / (b.getLat(j) - b.getLat(i)) + b.getLng(i)) {
+					inside = !inside;
+				}
+			}
+			if (inside) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String read(Path file) {
+		try {
+			return Files.readString(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
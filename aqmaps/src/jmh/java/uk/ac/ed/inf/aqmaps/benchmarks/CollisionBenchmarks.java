@@ -0,0 +1,96 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+
+import uk.ac.ed.inf.aqmaps.Obstacle;
+import uk.ac.ed.inf.aqmaps.PathFinder;
+import uk.ac.ed.inf.aqmaps.PlanningContext;
+
+// how long it takes to check whether one move crosses a building. Each benchmark checks the same 1024 random moves
+// and reports the time per move
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.desktop/java.awt.geom=ALL-UNNAMED")
+public class CollisionBenchmarks {
+	private static final int MOVES = 1024;
+
+	private List<Obstacle> buildings;
+	private PlanningContext context;
+	// the moves as {fromLng, fromLat, toLng, toLat} one after the other, and the same moves as LineStrings
+	private double[] moves;
+	private LineString[] lines;
+
+	@Setup
+	public void setUp() {
+		this.buildings = BenchmarkData.buildings();
+		this.context = new PlanningContext(this.buildings);
+		this.moves = BenchmarkData.randomMoves(this.buildings, MOVES);
+		this.lines = new LineString[MOVES];
+		for (var m = 0; m < MOVES; m++) {
+			this.lines[m] = LineString.fromLngLats(List.of(
+					Point.fromLngLat(this.moves[m * 4], this.moves[m * 4 + 1]),
+					Point.fromLngLat(this.moves[m * 4 + 2], this.moves[m * 4 + 3])));
+		}
+	}
+
+	// the check the drone makes for every move it considers, through the spatial index
+	@Benchmark
+	@OperationsPerInvocation(MOVES)
+	public void checkIllegalMove(Blackhole blackhole) {
+		for (var m = 0; m < MOVES; m++) {
+			blackhole.consume(this.context.checkIllegalMove(this.moves[m * 4], this.moves[m * 4 + 1],
+					this.moves[m * 4 + 2], this.moves[m * 4 + 3]));
+		}
+	}
+
+	// the same check given a LineString, which has to read the coordinates back out of it
+	@Benchmark
+	@OperationsPerInvocation(MOVES)
+	public void checkIllegalMoveLineString(Blackhole blackhole) {
+		for (var line : this.lines) {
+			blackhole.consume(this.context.checkIllegalMove(line));
+		}
+	}
+
+	// checking every edge of every building without the spatial index, as a baseline for it
+	@Benchmark
+	@OperationsPerInvocation(MOVES)
+	public void linesIntersectEveryEdge(Blackhole blackhole) {
+		for (var m = 0; m < MOVES; m++) {
+			Obstacle hit = null;
+			for (var b : this.buildings) {
+				for (var i = 0; i < b.getPointCount() && hit == null; i++) {
+					var next = (i + 1) % b.getPointCount();
+					if (PathFinder.linesIntersect(this.moves[m * 4], this.moves[m * 4 + 1], this.moves[m * 4 + 2], this.moves[m * 4 + 3],
+							b.getLng(i), b.getLat(i), b.getLng(next), b.getLat(next))) {
+						hit = b;
+					}
+				}
+				if (hit != null) {
+					break;
+				}
+			}
+			blackhole.consume(hit);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.ed.inf.aqmaps.DistanceMatrix;
+import uk.ac.ed.inf.aqmaps.Drone;
+import uk.ac.ed.inf.aqmaps.FlightStatus;
+import uk.ac.ed.inf.aqmaps.PathFinder;
+import uk.ac.ed.inf.aqmaps.PlanningContext;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+// how long the drone takes to fly, from a short flight up to a whole day's route, flying greedily or with A*
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.desktop/java.awt.geom=ALL-UNNAMED")
+public class DroneBenchmarks {
+	private static final int MOVES = 256;
+
+	// whether the drone plans its moves with A*
+	@Param({"false", "true"})
+	public boolean astar;
+
+	private PlanningContext context;
+	private Point2D start;
+	private List<Sensor> route;
+	// random flights to a point one move away, as {fromLng, fromLat, toLng, toLat} one after the other
+	private double[] moves;
+
+	@Setup
+	public void setUp() {
+		var buildings = BenchmarkData.buildings();
+		this.context = new PlanningContext(buildings);
+		this.start = BenchmarkData.START_POSITIONS[0];
+		var sensors = BenchmarkData.sensorSets(buildings).get(0);
+		this.route = PathFinder.orderSensors(new DistanceMatrix(this.start, sensors), sensors, 100);
+		this.moves = BenchmarkData.randomMoves(buildings, MOVES);
+	}
+
+	// flying to a point one move away. That takes a single move in the open, but can take many when the drone has to
+	// go round a building, so this is the time for a short flight rather than for one move
+	@Benchmark
+	@OperationsPerInvocation(MOVES)
+	public void shortFlight(Blackhole blackhole) {
+		for (var m = 0; m < MOVES; m++) {
+			var drone = this.drone(new Point2D.Double(this.moves[m * 4 + 1], this.moves[m * 4]));
+			blackhole.consume(drone.getToPoint(new Point2D.Double(this.moves[m * 4 + 3], this.moves[m * 4 + 2])));
+		}
+	}
+
+	// flying from the start position to the first sensor of the route and reading it
+	@Benchmark
+	public Boolean getToSensor() {
+		return this.drone(this.start).getToSensor(this.route.get(0), this.route.get(1).getCoordinates());
+	}
+
+	// flying the whole route and back
+	@Benchmark
+	public FlightStatus flyRoute() {
+		return this.drone(this.start).flyRoute(this.route, this.start);
+	}
+
+	private Drone drone(Point2D position) {
+		var drone = new Drone(this.context, position);
+		if (this.astar) {
+			drone.setPlanner(this.context.getFlightPlanner());
+		}
+		return drone;
+	}
+}
@@ -0,0 +1,73 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.inf.aqmaps.DistanceMatrix;
+import uk.ac.ed.inf.aqmaps.PathFinder;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+// how long it takes to work out the order to visit one day's sensors in
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.desktop/java.awt.geom=ALL-UNNAMED")
+public class RoutingBenchmarks {
+	// which of the sensor sets in BenchmarkData to order
+	@Param({"0", "2", "4"})
+	public int sensorSet;
+
+	private Point2D start;
+	private List<Sensor> sensors;
+	private DistanceMatrix distances;
+
+	@Setup
+	public void setUp() {
+		this.sensors = BenchmarkData.sensorSets(BenchmarkData.buildings()).get(this.sensorSet);
+		this.start = BenchmarkData.START_POSITIONS[0];
+		this.distances = new DistanceMatrix(this.start, this.sensors);
+	}
+
+	@Benchmark
+	public DistanceMatrix distanceMatrix() {
+		return new DistanceMatrix(this.start, this.sensors);
+	}
+
+	@Benchmark
+	public List<Sensor> nearestNeighbor() {
+		return PathFinder.nearestNeighbor(this.start, this.sensors);
+	}
+
+	// 2-opt from the order the sensors were given in
+	@Benchmark
+	public List<Sensor> twoOpt() {
+		return PathFinder.twoOpt(this.start, this.sensors);
+	}
+
+	// the whole ordering the program does by default: nearestNeighbor then 2-opt
+	@Benchmark
+	public List<Sensor> orderSensors() {
+		return PathFinder.orderSensors(this.distances, this.sensors);
+	}
+
+	// the ordering with --search-iterations=100: nearestNeighbor, 2-opt, then Or-opt and 3-opt
+	@Benchmark
+	public List<Sensor> orderSensorsWithLocalSearch() {
+		return PathFinder.orderSensors(this.distances, this.sensors, 100);
+	}
+}
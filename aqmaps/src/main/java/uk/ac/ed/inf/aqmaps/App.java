@@ -1,16 +1,42 @@
 package uk.ac.ed.inf.aqmaps;
 
 import java.awt.geom.Point2D;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 //make this class final to emulate a static class
 public final class App {	
+	// the buildings of the last run and the planning context made for them
+	private static List<Obstacle> lastBuildings;
+	private static PlanningContext lastContext;
+	
 	// do not allow this class to be instantiated
 	private App() {}
 	
-	// Execute the program
+	// Execute the program. With --batch as the first argument, many flights are planned at once (see Batch), and with
+	// --serve flights are planned on request by a resident service (see PlanningService)
     public static void main(String[] args) {
-        run(args);
+    	try {
+    		if (args.length > 0 && args[0].equals("--batch")) {
+    			// batches and the service run long enough to be worth watching through JMX
+    			Metrics.register();
+    			Batch.run(Arrays.copyOfRange(args, 1, args.length));
+    		} else if (args.length > 0 && args[0].equals("--serve")) {
+    			Metrics.register();
+    			PlanningService.run(Arrays.copyOfRange(args, 1, args.length));
+    		} else {
+    			run(args);
+    		}
+    	} catch (DataSourceException e) {
+    		// without the data there is nothing that can be done, so print what went wrong and exit the program
+    		if (e.isNotFound()) {
+    			System.out.println(e.getMessage() + " Terminating...");
+    		} else {
+    			System.out.println("Fatal error: " + e.getMessage());
+    		}
+    		System.exit(1);
+    	}
     }
     
     public static void run(String[] args) {
@@ -31,70 +57,64 @@ public final class App {
         if (PathFinder.isOutofBounds(startCoordinates, 0) != 0) {
         	throw new IllegalArgumentException("Given start position is out of bounds");
         }
-        // seed is not used in this implementation
-    	@SuppressWarnings("unused")
-        var seed = args[5];
+        // seed is used to randomise the route when building several with --multi-start
+        var seed = parseSeed(args[5]);
         var port = args[6];
+        // read any optional flags given after the required arguments
+        var options = Options.parse(args, 7);
+        // with --metrics, what the run spent its time on is written out at the end
+        var startTime = System.nanoTime();
+        var metricsBefore = Metrics.snapshot();
+        var source = dataSource(options, port);
         
+        var stageStart = System.nanoTime();
+        // get the building that should be avoided, in the background while the sensors are read
+        var buildingsRead = Fetcher.get().fetch(source::readBuildings);
         // get the sensors to be visited for the given date
-        List<Sensor> sensors = IO.readSensors(day, month, year, port);
-        // get the building that should be avoided
-        List<Obstacle> buildings = IO.readBuildings(port);
-        // set the no-fly-zones of PathFinder as the buildings
-        PathFinder.setNoFlyZones(buildings);
+        List<Sensor> sensors = source.readLocatedSensors(day, month, year);
+        List<Obstacle> buildings = Fetcher.join(buildingsRead);
+        Metrics.timer("stage.read").recordSince(stageStart);
+        // plan the flight around the buildings
+        var context = planningContext(buildings);
         // instantiate a Drone object to control
-        Drone drone = new Drone(startCoordinates);
+        Drone drone = new Drone(context, startCoordinates);
+        // with --astar the drone plans its moves to each sensor rather than flying greedily towards it
+        usePlanner(options, context, drone);
         
         System.out.println("Calculating order to visit sensors...");
-        // use nearestNeighbor from PathFinder search first to get a basic order of sensors to visit
-        List<Sensor> flightPlan = PathFinder.nearestNeighbor(startCoordinates, sensors);
-        // give the nearestNeighbor solution to twoOpt and use the output as the route
-        flightPlan = PathFinder.twoOpt(startCoordinates, flightPlan);
-        
-        // initialise this boolean which represents whether the drone has run out of moves
-        Boolean canStillMove = true;
+        stageStart = System.nanoTime();
+        // use nearestNeighbor to get a basic order of sensors to visit, then improve it with twoOpt, Or-opt and 3-opt
+        // (several times over in parallel with --multi-start)
+        List<Sensor> flightPlan = orderSensors(options, seed, context, startCoordinates, sensors);
+        Metrics.timer("stage.order").recordSince(stageStart);
         
         System.out.println("The drone is executing the flight plan!");
-        // repeat until every sensor in the route has been visited
-        while (flightPlan.isEmpty() != true) {
-        	// getToSensor will return false if the drone ran out of moves or tried to go out of bounds.
-        	canStillMove = drone.getToSensor(flightPlan.get(0));
-        	// if the drone is out of moves, add the remaining sensors
-        	if (canStillMove == false) {
-        		// print appropriate message
-            	System.out.println("The drone did not complete the plan as it ran out of moves...");
-        		// fill out the remaining sensors as they were not visited
-        		while (flightPlan.isEmpty() != true) {
-        			var sensorFeature = PathFinder.makeSensorFeature(flightPlan.get(0).getCoordinates().getX(),
-        					flightPlan.get(0).getCoordinates().getY(),
-        					flightPlan.get(0).getLocation(),
-        					"#aaaaaa",
-        					"");
-        			drone.getFeatureList().add(sensorFeature);
-        			flightPlan.remove(0);
-        		}
-        	} else {
-        		// remove the just visited sensor from the flightPlan
-        		flightPlan.remove(0);
-        	}
-        }
-        // if the drone still has moves after visiting every sensor
-        if (canStillMove == true) {
-        	// tell the drone to go back to the starting coordinates
-            canStillMove = drone.getToPoint(startCoordinates);
-            // if the drone ran out moves on the way back print a message indicating so
-            if (canStillMove == false) {
-            	System.out.println("The drone visited each sensor but ran out of moves on it's way back home...");
-            } else {
-                System.out.println("The drone is finished!");
-            }
+        stageStart = System.nanoTime();
+        // visit every sensor in the route, then go back to the starting coordinates
+        var status = drone.flyRoute(flightPlan, startCoordinates);
+        Metrics.timer("stage.simulate").recordSince(stageStart);
+        if (status == FlightStatus.UNFINISHED) {
+        	System.out.println("The drone did not complete the plan as it ran out of moves...");
+        } else if (status == FlightStatus.NOT_RETURNED) {
+        	System.out.println("The drone visited each sensor but ran out of moves on it's way back home...");
+        } else {
+        	System.out.println("The drone is finished!");
         }
                 
         System.out.println("Creating files...");
+        stageStart = System.nanoTime();
         // create the readings file
-        IO.writeReadings(drone.buildReadings(), day, month, year);
-        // create the flight path file
-        IO.writeFlightPath(drone.getFlightPath(), day, month, year);
+        IO.writeReadings(drone.getFeatureList(), drone.getPoints(), day, month, year);
+        // create the flight path file, as text unless --flight-path-format=binary is given
+        if (options.binaryFlightPath()) {
+        	IO.writeBinaryFlightPath(Paths.get(""), drone.getFlightPath(), day, month, year);
+        } else {
+        	IO.writeFlightPath(drone.getFlightPath(), day, month, year);
+        }
+        Metrics.timer("stage.write").recordSince(stageStart);
+        if (options.writeMetrics()) {
+        	Metrics.write(Paths.get("metrics-"+day+"-"+month+"-"+year+".json"), metricsBefore, System.nanoTime() - startTime);
+        }
         
 		System.out.println("The drone took " + (150 - drone.getMovesLeft()) + " moves to complete the route.");
         System.out.println("Done!");
@@ -116,44 +136,101 @@ public final class App {
     	}
         var year = args[2];
         var startCoordinates = new Point2D.Double(Double.parseDouble(args[3]), Double.parseDouble(args[4]));
-    	@SuppressWarnings("unused")
-        var seed = args[5];
+        var seed = parseSeed(args[5]);
         var port = args[6];
+        var options = Options.parse(args, 7);
+        var source = dataSource(options, port);
                 
-        List<Sensor> sensors = IO.readSensors(day, month, year, port);
-        List<Obstacle> buildings = IO.readBuildings(port);
-        PathFinder.setNoFlyZones(buildings);
-        Drone drone = new Drone(startCoordinates);
+        var buildingsRead = Fetcher.get().fetch(source::readBuildings);
+        List<Sensor> sensors = source.readLocatedSensors(day, month, year);
+        List<Obstacle> buildings = Fetcher.join(buildingsRead);
+        var context = planningContext(buildings);
+        Drone drone = new Drone(context, startCoordinates);
+        usePlanner(options, context, drone);
 
-        List<Sensor> flightPlan = PathFinder.nearestNeighbor(startCoordinates, sensors);
-        flightPlan = PathFinder.twoOpt(startCoordinates, flightPlan);
-        
-        Boolean canStillMove = true;
-        
-        while (flightPlan.isEmpty() != true) {
-        	// getToSensor will return false if the drone ran out of moves or tried to go out of bounds.
-        	canStillMove = drone.getToSensor(flightPlan.get(0));
-        	
-        	if (canStillMove == false) {
-        		// print appropriate message
-            	System.out.println("The drone did not complete the plan as it ran out of moves...");
-        		return 150;
-        	} else {
-        		// remove the just visited sensor from the flightPlan
-        		flightPlan.remove(0);
-        	}
-        }
+        List<Sensor> flightPlan = orderSensors(options, seed, context, startCoordinates, sensors);
         
-        if (canStillMove == true) {
-        	// tell the drone to go back to the starting coordinates
-            canStillMove = drone.getToPoint(startCoordinates);
-            if (canStillMove == false) {
-            	System.out.println("The drone visited each sensor but ran out of moves on it's way back home...");
-            }
+        var status = drone.flyRoute(flightPlan, startCoordinates);
+        if (status == FlightStatus.UNFINISHED) {
+        	// print appropriate message
+        	System.out.println("The drone did not complete the plan as it ran out of moves...");
+        	return 150;
+        } else if (status == FlightStatus.NOT_RETURNED) {
+        	System.out.println("The drone visited each sensor but ran out of moves on it's way back home...");
         }
         
         var moves = 150 - drone.getMovesLeft();
 		//System.out.println("Number of moves = " + moves);
         return moves;
     }
+    
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    
+    // returns the planning context for the given buildings. IO hands back the same list while the buildings have not
+    // changed, so the context (and what its planners remember) carries over between runs in the same JVM
+    static synchronized PlanningContext planningContext(List<Obstacle> buildings) {
+    	if (lastBuildings != buildings) {
+    		lastContext = new PlanningContext(buildings);
+    		lastBuildings = buildings;
+    	}
+    	return lastContext;
+    }
+    
+    // returns where to read the data from according to the given options: the web server at the given port, or with
+    // --data-dir a copy of its files on disk. Unless --no-words-cache is given, what3words are looked up in the cache
+    static DataSource dataSource(Options options, String port) {
+    	if (options.clearWordsCache()) {
+    		WordsCache.clear(options.getWordsCacheFile());
+    	}
+    	DataSource source;
+    	if (options.getDataDir() != null) {
+    		source = DirectoryDataSource.open(options.getDataDir());
+    	} else {
+    		source = HttpDataSource.forPort(port);
+    	}
+    	if (options.useWordsCache()) {
+    		return new CachingDataSource(source, WordsCache.open(options.getWordsCacheFile()));
+    	}
+    	return source;
+    }
+    
+    // gives the drone an A* flight planner if the options ask for one
+    static void usePlanner(Options options, PlanningContext context, Drone drone) {
+    	if (options.useAStar()) {
+    		drone.setPlanner(context.getFlightPlanner());
+    	}
+    }
+    
+    // finds the order to visit the sensors in according to the given options
+    static List<Sensor> orderSensors(Options options, long seed, PlanningContext context, Point2D startCoordinates,
+    		List<Sensor> sensors) {
+    	var costs = routeCosts(options, context, startCoordinates, sensors);
+    	if (options.getStarts() > 1) {
+    		return PathFinder.orderSensors(costs, sensors, options.getSearchIterations(), options.getSearchTimeMillis(),
+    				options.getStarts(), seed, options.getWorkers());
+    	}
+    	return PathFinder.orderSensors(costs, sensors, options.getSearchIterations(), options.getSearchTimeMillis());
+    }
+    
+    // reads the seed argument. An empty seed is treated as 0
+    static long parseSeed(String seed) {
+    	if (seed.isEmpty()) {
+    		return 0;
+    	}
+    	try {
+    		return Long.parseLong(seed);
+    	} catch (NumberFormatException e) {
+    		throw new IllegalArgumentException("Given seed is not a whole number");
+    	}
+    }
+    
+    // creates the matrix of costs between the start position and the sensors which the route should minimise.
+    // this is either the straight line distance or, with --flight-cost, the moves the drone needs
+    private static DistanceMatrix routeCosts(Options options, PlanningContext context, Point2D startCoordinates, List<Sensor> sensors) {
+    	if (options.useFlightCost()) {
+    		return context.getFlightCostModel().buildMatrix(startCoordinates, sensors);
+    	}
+    	return new DistanceMatrix(startCoordinates, sensors);
+    }
 }
@@ -0,0 +1,159 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+// plans a flight for every date in a range from every one of a list of start positions, all in one JVM.
+// the buildings are read once and shared by every flight through one PlanningContext, and each date's sensors are
+// read once and shared by every start position. Flights are streamed through the stages of a Pipeline, so that
+// reading, planning and writing overlap, and a summary line is printed for each one in date and start position order
+// once they are all done
+public final class Batch {
+	// how dates are given on the command line, the same as in the names of the output files
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+	// do not allow this class to be instantiated
+	private Batch() {}
+
+	// runs a batch given the arguments <first date> <last date> <seed> <port> <lat,lng>... followed by any flags.
+	// dates are given as dd-mm-yyyy and both are included. With more than one start position, the files for each
+	// are written to their own directory named <lat>_<lng> inside the output directory
+	public static void run(String[] args) {
+		if (args.length < 5) {
+			throw new IllegalArgumentException("Batch mode needs <first date> <last date> <seed> <port> <lat,lng>...");
+		}
+		var firstDate = parseDate(args[0]);
+		var lastDate = parseDate(args[1]);
+		if (lastDate.isBefore(firstDate)) {
+			throw new IllegalArgumentException("Given last date is before the first date");
+		}
+		var seed = App.parseSeed(args[2]);
+		var port = args[3];
+
+		// the start positions are every argument up to the first flag
+		var startNames = new ArrayList<String>();
+		var starts = new ArrayList<Point2D>();
+		var i = 4;
+		for (; i < args.length && args[i].startsWith("--") == false; i++) {
+			startNames.add(args[i].replace(',', '_'));
+			starts.add(parseStart(args[i]));
+		}
+		if (starts.isEmpty()) {
+			throw new IllegalArgumentException("Batch mode needs at least one start position");
+		}
+		var options = Options.parse(args, i);
+		var source = App.dataSource(options, port);
+
+		var startTime = System.nanoTime();
+		var metricsBefore = Metrics.snapshot();
+		// read the buildings once for every flight
+		var context = App.planningContext(source.readBuildings());
+
+		// only split the files into directories when they would otherwise have the same names
+		var directories = new ArrayList<Path>();
+		for (var name : startNames) {
+			directories.add(starts.size() == 1 ? options.getOutputDir() : options.getOutputDir().resolve(name));
+		}
+		var dates = new ArrayList<LocalDate>();
+		for (var date = firstDate; date.isAfter(lastDate) == false; date = date.plusDays(1)) {
+			dates.add(date);
+		}
+
+		// stream the flights through the stages of the pipeline
+		List<Summary> summaries;
+		try {
+			summaries = new Pipeline(source, context, options, seed, starts, directories).run(dates);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while planning the batch", e);
+		}
+
+		// print a line for every flight, and count how they went
+		var completed = 0;
+		var totalMoves = 0;
+		for (var summary : summaries) {
+			System.out.println(summary);
+			totalMoves += summary.moves;
+			if (summary.status == FlightStatus.COMPLETE) {
+				completed++;
+			}
+		}
+		var millis = (System.nanoTime() - startTime) / 1_000_000;
+		System.out.println("Planned " + summaries.size() + " flights in " + millis + " ms: " + completed + " complete, "
+				+ String.format("%.2f", (double) totalMoves / summaries.size()) + " moves on average");
+		if (options.writeMetrics()) {
+			Metrics.write(options.getOutputDir().resolve("metrics-" + args[0] + "-" + args[1] + ".json"), metricsBefore,
+					System.nanoTime() - startTime);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// the label a flight is given in the summary, its date then its start position
+	static String label(LocalDate date, Point2D start) {
+		return date.format(DATE_FORMAT) + " " + start.getX() + "," + start.getY();
+	}
+
+	// reads a date given as dd-mm-yyyy
+	static LocalDate parseDate(String date) {
+		try {
+			return LocalDate.parse(date, DATE_FORMAT);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Given date " + date + " is not of the form dd-mm-yyyy");
+		}
+	}
+
+	// reads a start position given as lat,lng and makes sure it is in bounds
+	static Point2D parseStart(String start) {
+		var parts = start.split(",");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Given start position " + start + " is not of the form lat,lng");
+		}
+		Point2D coordinates;
+		try {
+			coordinates = new Point2D.Double(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Given start position " + start + " is not of the form lat,lng");
+		}
+		if (PathFinder.isOutofBounds(coordinates, 0) != 0) {
+			throw new IllegalArgumentException("Given start position " + start + " is out of bounds");
+		}
+		return coordinates;
+	}
+
+	// returns a one line description of why a flight failed
+	static String describe(Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e.getClass().getSimpleName() + (e.getMessage() == null ? "" : ": " + e.getMessage().replace('\n', ' '));
+	}
+
+	// how one flight of the batch went, printed as "<date> <lat,lng> <moves> <status>" and why it failed if it did
+	static final class Summary {
+		private final String label;
+		private final int moves;
+		private final FlightStatus status;
+		private final String error;
+
+		Summary(String label, int moves, FlightStatus status, String error) {
+			this.label = label;
+			this.moves = moves;
+			this.status = status;
+			this.error = error;
+		}
+
+		@Override
+		public String toString() {
+			return this.label + " " + this.moves + " " + this.status + (this.error == null ? "" : " " + this.error);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// remembers at most a fixed number of values, forgetting the one used longest ago to make room for a new one.
+// the caches which live as long as the process use it, so that a planning service which sees ever more dates and
+// start positions does not grow without end. Any number of threads can use a cache at once: every call holds its
+// lock only for the map lookup, so values should be worked out before they are put in
+final class BoundedCache<K, V> {
+	private final Map<K, V> entries;
+
+	// CONSTRUCTOR //
+	// makes an empty cache which holds at most 'capacity' values
+	BoundedCache(int capacity) {
+		this.entries = new LeastRecentlyUsed<>(capacity);
+	}
+
+	// METHODS //
+	// returns the value of the key, or null if it has none
+	synchronized V get(K key) {
+		return this.entries.get(key);
+	}
+
+	// gives the key the value, unless it already has one. Returns the value the key ends up with
+	synchronized V putIfAbsent(K key, V value) {
+		var existing = this.entries.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		this.entries.put(key, value);
+		return value;
+	}
+
+	// returns the number of values held
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	// a map in order of use which removes its least recently used entry once it holds more than 'capacity'
+	private static final class LeastRecentlyUsed<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		private LeastRecentlyUsed(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return this.size() > this.capacity;
+		}
+	}
+}
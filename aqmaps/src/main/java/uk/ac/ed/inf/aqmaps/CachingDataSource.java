@@ -0,0 +1,86 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+// wraps another DataSource so that what has been read through it is not read again.
+// the coordinates of what3words locations are kept in a WordsCache, which may be stored on disk between runs, and
+// only the locations missing from it are looked up by the wrapped source. The sensors of the dates read most
+// recently are kept, so every flight planned on a date shares the same Sensors. The buildings are always read from
+// the wrapped source, which already checks for itself whether they have changed
+public final class CachingDataSource implements DataSource {
+	// the most dates whose sensors are kept. Batches plan every flight of a date together, so this is plenty
+	private static final int MAX_DATES = 64;
+
+	private static final Metrics.Counter wordsCacheHits = Metrics.counter("wordsCache.hits");
+	private static final Metrics.Counter wordsCacheMisses = Metrics.counter("wordsCache.misses");
+
+	private final DataSource source;
+	private final WordsCache wordsCache;
+	// the sensors of the dates read most recently, with their coordinates set, keyed by yyyy/mm/dd
+	private final BoundedCache<String, List<Sensor>> sensorsByDate = new BoundedCache<>(MAX_DATES);
+
+	// CONSTRUCTOR //
+	public CachingDataSource(DataSource source, WordsCache wordsCache) {
+		this.source = source;
+		this.wordsCache = wordsCache;
+	}
+
+	// METHODS //
+	@Override
+	public List<Sensor> readSensors(String day, String month, String year) {
+		return this.source.readSensors(day, month, year);
+	}
+
+	// looks up the locations which are not in the words cache with the wrapped source, then adds them to the cache
+	@Override
+	public List<Point2D> readCoordinates(List<String> locations) {
+		var coordinates = new ArrayList<Point2D>();
+		var missing = new ArrayList<String>();
+		for (var location : locations) {
+			var cached = this.wordsCache.get(location);
+			coordinates.add(cached);
+			if (cached == null) {
+				missing.add(location);
+			}
+		}
+		wordsCacheHits.add(locations.size() - missing.size());
+		wordsCacheMisses.add(missing.size());
+		if (missing.isEmpty()) {
+			return coordinates;
+		}
+
+		// fill in the gaps in the same order the locations were missing
+		var found = this.source.readCoordinates(missing);
+		var f = 0;
+		for (var i = 0; i < coordinates.size(); i++) {
+			if (coordinates.get(i) == null) {
+				this.wordsCache.put(locations.get(i), found.get(f));
+				coordinates.set(i, found.get(f));
+				f++;
+			}
+		}
+		return coordinates;
+	}
+
+	@Override
+	public List<Obstacle> readBuildings() {
+		return this.source.readBuildings();
+	}
+
+	// returns the sensors of the given date, only reading them the first time the date is asked for. The list
+	// returned can be changed by the caller, but the Sensors in it are shared
+	@Override
+	public List<Sensor> readLocatedSensors(String day, String month, String year) {
+		var date = year + "/" + month + "/" + day;
+		var sensors = this.sensorsByDate.get(date);
+		if (sensors == null) {
+			// read outside of the map so that reads of other dates are not held up. If two threads read the same date
+			// at once, the first to finish wins and both use its Sensors
+			var read = List.copyOf(DataSource.super.readLocatedSensors(day, month, year));
+			sensors = this.sensorsByDate.putIfAbsent(date, read);
+		}
+		return new ArrayList<>(sensors);
+	}
+}
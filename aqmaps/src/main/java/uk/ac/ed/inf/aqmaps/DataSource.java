@@ -0,0 +1,34 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+// where the program reads the sensors, buildings and what3words locations from.
+// the web server is read by HttpDataSource and a copy of its files on disk by DirectoryDataSource. Either can be
+// wrapped in a CachingDataSource so that what has been read once is not read again. Any problem reading the data
+// is thrown as a DataSourceException
+public interface DataSource {
+	// reads the sensors to be visited on the given date. Their coordinates are not set
+	List<Sensor> readSensors(String day, String month, String year);
+
+	// looks up the coordinates of each of the given what3words locations, returned in the same order
+	List<Point2D> readCoordinates(List<String> locations);
+
+	// reads the buildings that should be avoided. The same unmodifiable list is returned while they have not changed
+	List<Obstacle> readBuildings();
+
+	// reads the sensors to be visited on the given date and sets the coordinates of each of them
+	default List<Sensor> readLocatedSensors(String day, String month, String year) {
+		var sensors = this.readSensors(day, month, year);
+		var locations = new ArrayList<String>();
+		for (var sensor : sensors) {
+			locations.add(sensor.getLocation());
+		}
+		var coordinates = this.readCoordinates(locations);
+		for (var i = 0; i < sensors.size(); i++) {
+			sensors.get(i).setCoordinates(coordinates.get(i));
+		}
+		return sensors;
+	}
+}
@@ -0,0 +1,38 @@
+package uk.ac.ed.inf.aqmaps;
+
+// thrown when a DataSource is unable to read the data it was asked for, either because it cannot be reached or
+// because the data does not exist
+public class DataSourceException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	// whether the data does not exist, rather than the source being unable to give it
+	private final boolean notFound;
+
+	public DataSourceException(String message) {
+		this(message, null, false);
+	}
+
+	public DataSourceException(String message, Throwable cause) {
+		this(message, cause, false);
+	}
+
+	private DataSourceException(String message, Throwable cause, boolean notFound) {
+		super(message, cause);
+		this.notFound = notFound;
+	}
+
+	// METHODS //
+	// returns an exception saying that the data asked for does not exist
+	public static DataSourceException notFound(String message) {
+		return new DataSourceException(message, null, true);
+	}
+
+	public static DataSourceException notFound(String message, Throwable cause) {
+		return new DataSourceException(message, cause, true);
+	}
+
+	// GETTERS //
+	public boolean isNotFound() {
+		return this.notFound;
+	}
+}
@@ -0,0 +1,35 @@
+package uk.ac.ed.inf.aqmaps;
+
+// the change in latitude and longitude for one move in each of the 36 directions the drone can fly in.
+// each offset is worked out once with the same sums Drone used to do on every move, so adding an offset to a position
+// gives exactly the same coordinates as before
+public final class Directions {
+	// the distance the drone travels in one move
+	public static final double STEP = 0.0003;
+	// the number of directions the drone can fly in, every 10 degrees
+	public static final int COUNT = 36;
+
+	// the offsets for direction d are at index d / 10
+	private static final double[] LAT_STEPS = new double[COUNT];
+	private static final double[] LNG_STEPS = new double[COUNT];
+
+	static {
+		for (var i = 0; i < COUNT; i++) {
+			LAT_STEPS[i] = STEP * Math.sin(Math.toRadians(i * 10));
+			LNG_STEPS[i] = STEP * Math.cos(Math.toRadians(i * 10));
+		}
+	}
+
+	// do not allow this class to be instantiated
+	private Directions() {}
+
+	// returns the change in latitude when moving in the given direction, which must be a multiple of 10 from 0 to 350
+	public static double latStep(int direction) {
+		return LAT_STEPS[direction / 10];
+	}
+
+	// returns the change in longitude when moving in the given direction, which must be a multiple of 10 from 0 to 350
+	public static double lngStep(int direction) {
+		return LNG_STEPS[direction / 10];
+	}
+}
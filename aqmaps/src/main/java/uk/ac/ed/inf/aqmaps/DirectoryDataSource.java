@@ -0,0 +1,121 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// reads the data from a copy of the web server's files on disk, laid out the same way as on the server:
+// maps/yyyy/mm/dd/air-quality-data.json, buildings/no-fly-zones.geojson and words/w1/w2/w3/details.json.
+// large files are memory mapped rather than copied into the heap before they are decoded
+public final class DirectoryDataSource implements DataSource {
+	// files at least this many bytes long are memory mapped. Mapping a file costs more than reading a small one
+	private static final long MAP_THRESHOLD = 64 * 1024;
+
+	// the source for every directory that has been read from in this process, so that repeated runs share it
+	private static final Map<Path, DirectoryDataSource> sources = new ConcurrentHashMap<>();
+
+	private final Path root;
+	// the buildings most recently read, along with the size and modification time of the file they were read from
+	private volatile CachedBuildings cachedBuildings;
+
+	private DirectoryDataSource(Path root) {
+		this.root = root;
+	}
+
+	// METHODS //
+	// returns the source for the given directory
+	public static DirectoryDataSource open(Path root) {
+		if (Files.isDirectory(root) == false) {
+			throw new DataSourceException("Given data directory " + root + " does not exist.");
+		}
+		return sources.computeIfAbsent(root.toAbsolutePath().normalize(), DirectoryDataSource::new);
+	}
+
+	@Override
+	public List<Sensor> readSensors(String day, String month, String year) {
+		var file = this.root.resolve("maps").resolve(year).resolve(month).resolve(day).resolve("air-quality-data.json");
+		return IO.parseSensors(this.read(file, "Unable to find the sensor data for the given date in " + this.root + "."));
+	}
+
+	@Override
+	public List<Point2D> readCoordinates(List<String> locations) {
+		var coordinates = new ArrayList<Point2D>();
+		for (var location : locations) {
+			String[] w = location.split("\\.");
+			var file = this.root.resolve("words").resolve(w[0]).resolve(w[1]).resolve(w[2]).resolve("details.json");
+			coordinates.add(IO.parseCoordinates(this.read(file, "Unable to find the word data for " + location + " in " + this.root + ".")));
+		}
+		return coordinates;
+	}
+
+	// reads the buildings, only parsing them again if the size or modification time of the file has changed
+	@Override
+	public List<Obstacle> readBuildings() {
+		var file = this.root.resolve("buildings").resolve("no-fly-zones.geojson");
+		var notFound = "Unable to find the building data in " + this.root + ".";
+		long size;
+		FileTime modified;
+		try {
+			size = Files.size(file);
+			modified = Files.getLastModifiedTime(file);
+		} catch (NoSuchFileException e) {
+			throw DataSourceException.notFound(notFound, e);
+		} catch (IOException e) {
+			throw new DataSourceException("Unable to read " + file + ".", e);
+		}
+
+		var cached = this.cachedBuildings;
+		if (cached != null && cached.size == size && cached.modified.equals(modified)) {
+			return cached.buildings;
+		}
+		var buildings = IO.parseBuildings(this.read(file, notFound));
+		this.cachedBuildings = new CachedBuildings(size, modified, buildings);
+		return buildings;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// reads the whole of the given file as UTF-8. 'notFound' is the message to give if it does not exist
+	private String read(Path file, String notFound) {
+		try (var channel = FileChannel.open(file)) {
+			var size = channel.size();
+			if (size >= MAP_THRESHOLD) {
+				return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)).toString();
+			}
+			var buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// keep reading until the whole file is in the buffer
+			}
+			return StandardCharsets.UTF_8.decode(buffer.flip()).toString();
+		} catch (NoSuchFileException e) {
+			throw DataSourceException.notFound(notFound, e);
+		} catch (IOException e) {
+			throw new DataSourceException("Unable to read " + file + ".", e);
+		}
+	}
+
+	// the buildings read from the directory, along with what is needed to check if the file has changed
+	private static final class CachedBuildings {
+		private final long size;
+		private final FileTime modified;
+		private final List<Obstacle> buildings;
+
+		private CachedBuildings(long size, FileTime modified, List<Obstacle> buildings) {
+			this.size = size;
+			this.modified = modified;
+			this.buildings = buildings;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+// the distances between every pair of points on a route, worked out once before the route is ordered.
+// index 0 is the start (and end) position and index i is the i-th sensor (counting from 1). The distances are held
+// in one flat array so the ordering algorithms only deal with ints and doubles rather than Sensors and Point2Ds.
+// the 'distance' does not have to be euclidean, e.g. FlightCostModel fills a matrix with the moves the drone needs
+public final class DistanceMatrix {
+	private final int size;
+	private final double[] distances;
+
+	// CONSTRUCTOR //
+	// creates the matrix of euclidean distances between the start position and the given sensors
+	public DistanceMatrix(Point2D startCoordinates, List<Sensor> sensors) {
+		this.size = sensors.size() + 1;
+		this.distances = new double[this.size * this.size];
+
+		// collect the coordinates of every point, with the start position first
+		var xs = new double[this.size];
+		var ys = new double[this.size];
+		xs[0] = startCoordinates.getX();
+		ys[0] = startCoordinates.getY();
+		for (var i = 1; i < this.size; i++) {
+			xs[i] = sensors.get(i - 1).getCoordinates().getX();
+			ys[i] = sensors.get(i - 1).getCoordinates().getY();
+		}
+
+		// distance is symmetric, so only work out each pair once
+		for (var i = 0; i < this.size; i++) {
+			for (var j = i + 1; j < this.size; j++) {
+				var distance = Point2D.distance(xs[i], ys[i], xs[j], ys[j]);
+				this.distances[i * this.size + j] = distance;
+				this.distances[j * this.size + i] = distance;
+			}
+		}
+	}
+
+	// creates a matrix from already worked out distances, stored row by row
+	DistanceMatrix(int size, double[] distances) {
+		this.size = size;
+		this.distances = distances;
+	}
+
+	// METHODS //
+	// returns the distance between the points at index i and j
+	public double get(int i, int j) {
+		return this.distances[i * this.size + j];
+	}
+
+	// returns the number of points in the matrix, including the start position
+	public int size() {
+		return this.size;
+	}
+}
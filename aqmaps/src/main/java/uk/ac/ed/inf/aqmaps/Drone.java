@@ -11,15 +11,30 @@ import com.mapbox.geojson.LineString;
 import com.mapbox.geojson.Point;
 
 public class Drone {
+	// how many other directions move has had to try because the first way was out of bounds or into a no-fly-zone
+	private static final Metrics.Counter moveRetries = Metrics.counter("drone.moveRetries");
+	
 	// ATTRIBUTES //
+	// the no-fly-zones the drone must avoid
+	private final PlanningContext context;
 	private List<Move> flightPath;
 	private List<Feature> featureList;
 	private List<Point> points;
 	private Point2D coordinates;
 	private int movesLeft;
+	// the last 4 points the drone has been at as lat and lng, in a ring starting at the oldest one
+	private final double[] recentLats = new double[4];
+	private final double[] recentLngs = new double[4];
+	private int oldestRecent;
+	// plans the moves to each sensor ahead of time. When null, the drone flies greedily towards each sensor instead
+	private FlightPlanner planner;
+	// the retries and no-fly-zone checks made by the moves since they were last added to the metrics
+	private long uncountedRetries;
+	private long uncountedChecks;
 	
 	// CONSTRUCTOR //
-	public Drone(Point2D startCoordinates) {
+	public Drone(PlanningContext context, Point2D startCoordinates) {
+		this.context = context;
 		this.movesLeft = 150;
 		this.flightPath = new ArrayList<>();
 		this.featureList = new ArrayList<>();
@@ -27,57 +42,122 @@ public class Drone {
 		this.points.add(Point.fromLngLat(startCoordinates.getY(), startCoordinates.getX()));
 		// current position stored as lat, lng
 		this.coordinates = (Point2D) startCoordinates.clone();
+		this.remember(startCoordinates.getX(), startCoordinates.getY());
 	}
 	
 	// METHODS //
 	// moves the drone towards the given sensor. Once it is close enough, it reads the sensor.
 	public Boolean getToSensor(Sensor s) {
-		// keep trying to move until an exit condition is met
-		while (true) {
-			// get the angle to towards the point
-			var angle = PathFinder.getAngle(this.coordinates, s.getCoordinates());
-			// move towards the point once using the calculated angle
-			var move = this.move(angle);
-			
-			// if move is null, then the drone is out of moves
-			if (move == null) {
-				// return false to indicate to 'App' that the drone has run out of moves
-				return false;
+		return this.getToSensor(s, null);
+	}
+	
+	// moves the drone towards the given sensor, knowing it heads to 'next' afterwards. A planner uses that to end
+	// as close to 'next' as it can. 'next' may be null
+	public Boolean getToSensor(Sensor s, Point2D next) {
+		try {
+			// fly the planned moves if the planner found a way to the sensor
+			var plan = this.plan(s.getCoordinates(), next, true);
+			if (plan != null) {
+				for (var i = 0; i < plan.length; i++) {
+					var move = this.moveInDirection(plan[i]);
+					// the last move of the plan is the one that reaches the sensor
+					if (i == plan.length - 1) {
+						this.checkSensor(s);
+						move.setWords(s.getLocation());
+					}
+					this.flightPath.add(move);
+				}
+				return true;
 			}
+		
+			// keep trying to move until an exit condition is met
+			while (true) {
+				// get the angle to towards the point
+				var angle = PathFinder.getAngle(this.coordinates, s.getCoordinates());
+				// move towards the point once using the calculated angle
+				var move = this.move(angle);
 			
-			// if the drone is outside of 0.0002 of the sensor, keep moving towards it
-			// either way, add the move to the flight path
-			if (this.coordinates.distance(s.getCoordinates()) > 0.0002) {
-				this.flightPath.add(move);
-			} else {
-				// if the drone is close enough, read the sensor
-				this.checkSensor(s);
-				// add the sensor words to the move before adding it to the flight path
-				move.setWords(s.getLocation());
-				this.flightPath.add(move);
-				// return true to indicate the drone reached the sensor and read it
-				return true;
+				// if move is null, then the drone is out of moves
+				if (move == null) {
+					// return false to indicate to 'App' that the drone has run out of moves
+					return false;
+				}
+			
+				// if the drone is outside of 0.0002 of the sensor, keep moving towards it
+				// either way, add the move to the flight path
+				if (this.coordinates.distance(s.getCoordinates()) > 0.0002) {
+					this.flightPath.add(move);
+				} else {
+					// if the drone is close enough, read the sensor
+					this.checkSensor(s);
+					// add the sensor words to the move before adding it to the flight path
+					move.setWords(s.getLocation());
+					this.flightPath.add(move);
+					// return true to indicate the drone reached the sensor and read it
+					return true;
+				}
 			}
+		} finally {
+			// what it took to get there is added to the metrics once, rather than on every move
+			this.countMetrics();
 		}
 	}
 	
 	// moves the drone towards the given point
 	public Boolean getToPoint(Point2D p) {
-		while (this.coordinates.distance(p) > 0.0002) {
-			// get the angle to towards the point
-			var angle = PathFinder.getAngle(this.coordinates, p);
-			// move towards the point once using the calculated angle
-			var move = this.move(angle);
-			
-			// if move is null then the drone is out of moves so return false to indicate that
-			if (move == null) {
-				return false;
+		try {
+			// fly the planned moves if the planner found a way to the point
+			var plan = this.plan(p, null, false);
+			if (plan != null) {
+				for (var direction : plan) {
+					this.flightPath.add(this.moveInDirection(direction));
+				}
+				return true;
 			}
+		
+			while (this.coordinates.distance(p) > 0.0002) {
+				// get the angle to towards the point
+				var angle = PathFinder.getAngle(this.coordinates, p);
+				// move towards the point once using the calculated angle
+				var move = this.move(angle);
 			
-			// add the move to the flight path
-			this.flightPath.add(move);
+				// if move is null then the drone is out of moves so return false to indicate that
+				if (move == null) {
+					return false;
+				}
+			
+				// add the move to the flight path
+				this.flightPath.add(move);
+			}
+			return true;
+		} finally {
+			// what it took to get there is added to the metrics once, rather than on every move
+			this.countMetrics();
 		}
-		return true;
+	}
+	
+	// flies the drone to each sensor of the route in order and then back to 'home'. If the drone runs out of moves
+	// before reading every sensor, the sensors it did not get to are added to the readings in grey.
+	// returns how far the drone got
+	public FlightStatus flyRoute(List<Sensor> route, Point2D home) {
+		for (var i = 0; i < route.size(); i++) {
+			// the drone heads to the next sensor afterwards, or home after the last one
+			var next = i + 1 < route.size() ? route.get(i + 1).getCoordinates() : home;
+			// getToSensor will return false if the drone ran out of moves
+			if (this.getToSensor(route.get(i), next) == false) {
+				// fill out the remaining sensors as they were not visited
+				for (var sensor : route.subList(i, route.size())) {
+					this.featureList.add(PathFinder.makeSensorFeature(sensor.getCoordinates().getX(),
+							sensor.getCoordinates().getY(),
+							sensor.getLocation(),
+							"#aaaaaa",
+							""));
+				}
+				return FlightStatus.UNFINISHED;
+			}
+		}
+		// tell the drone to go back to the starting coordinates
+		return this.getToPoint(home) ? FlightStatus.COMPLETE : FlightStatus.NOT_RETURNED;
 	}
 	
 	// merges 'points' and 'featureList' into a FeatureCollection and returns it
@@ -93,6 +173,7 @@ public class Drone {
 	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 	// moves the drone towards the closest multiple of 10 towards the given angle by a distance of 0.0003.
 	// returns a Move object consisting of the features of this movement. Returns null if the drone is out of moves.
+	// candidate moves are worked out as plain lat and lng values, so only the chosen move creates any objects
 	private Move move(double angle) {
 		// do not execute if the drone does not have any moves left
 		if (this.movesLeft < 1) {
@@ -105,27 +186,29 @@ public class Drone {
 		direction = Math.abs(direction % 360);
 		
 		// find the new location of the drone if it moved in the given direction
-		var p = this.getNewLocation(direction);
-		var x = p.getX();
-		var y = p.getY();
+		var x = this.newLat(direction);
+		var y = this.newLng(direction);
 		
 		//////////////////////////////////////////////////////////////////////////////////////////////////
 		/** if the drone is about to move out of bounds to get to the target, set the next best direction/
 		/*  according to which end of the boundary the drone is at									   **/
-		var whatWay = PathFinder.isOutofBounds(new Point2D.Double(x, y), angle);
+		var whatWay = PathFinder.isOutofBounds(x, y, angle);
+		// how many other directions were tried
+		var retries = 0;
 		
 		if (whatWay != 0) {
 			while (true) {
+				retries++;
 				// move the angle to the either clockwise or anti-clockwise direction
 				// also do maths to do modulo 360 for negative doubles
 				angle = (angle + whatWay) - Math.floor((angle + whatWay)/360.0) * 360.0;
 				
 				// get the next location to move to
-				var nextLocation = this.getNextBestMove(angle, whatWay);
-				x = nextLocation.getX();
-				y = nextLocation.getY();
+				var nextDirection = this.getNextBestMove(angle, whatWay);
+				x = this.newLat(nextDirection);
+				y = this.newLng(nextDirection);
 				
-				if (PathFinder.isOutofBounds(nextLocation, 0) == 0) {
+				if (PathFinder.isOutofBounds(x, y, 0) == 0) {
 					break;
 				}
 			}
@@ -133,7 +216,7 @@ public class Drone {
 		//////////////////////////////////////////////////////////////////////////////////////////////////
 		
 		//////////////////////////////////////////////////////////////////////////////////////////////////
-		var b = this.isMoveinObstacle(new Point2D.Double(x, y));
+		var b = this.isMoveinObstacle(x, y);
 		// if the planned move is illegal (flies the drone into a no-fly zone) then find the next best direction to go
 		if (b != null) {
 			// find the angle from the drone to the centre of the building
@@ -149,22 +232,23 @@ public class Drone {
 			}
 			
 			while (true) {
+				retries++;
 				// move the angle to the either clockwise or anti-clockwise direction
 				// also do maths to do modulo 360 for negative doubles
 				angle = (angle + whatWay) - Math.floor((angle + whatWay)/360.0) * 360.0;
 				
 				// get the next location to move to
-			    var nextLocation = this.getNextBestMove(angle, whatWay);
-			    x = nextLocation.getX();
-			    y = nextLocation.getY();
+			    var nextDirection = this.getNextBestMove(angle, whatWay);
+			    x = this.newLat(nextDirection);
+			    y = this.newLng(nextDirection);
 			    
 				// if the new path exits the boundary, try another angle
-				if (PathFinder.isOutofBounds(nextLocation, 0) != 0) {
+				if (PathFinder.isOutofBounds(x, y, 0) != 0) {
 					continue;
 				}
 				
 				// create a path from the calculated direction to check if it intersects with a building
-				b = this.isMoveinObstacle(nextLocation);
+				b = this.isMoveinObstacle(x, y);
 				// if the new location does not enter a no-fly-zone and does not exit the boundaries, break the loop
 				if (b == null) {
 					break;
@@ -173,71 +257,104 @@ public class Drone {
 		}
 		//////////////////////////////////////////////////////////////////////////////////////////////////
 		
+		this.uncountedRetries += retries;
 		// update the location of the drone
+		this.moveTo(x, y);
+				
+		return new Move(this.coordinates.getY(),this.coordinates.getX(),direction,x,y);
+	}
+	
+	// asks the planner for the moves to get within 0.0002 of the target. Returns null if there is no planner or it could
+	// not find a way there with the moves left
+	private int[] plan(Point2D target, Point2D next, boolean toSensor) {
+		if (this.planner == null) {
+			return null;
+		}
+		return this.planner.plan(this.coordinates, target, next, toSensor, this.movesLeft);
+	}
+	
+	// moves the drone by 0.0003 in the given direction, which the planner has already checked is a legal move.
+	// returns a Move object consisting of the features of this movement
+	private Move moveInDirection(int direction) {
+		var x = this.newLat(direction);
+		var y = this.newLng(direction);
+		
+		// update the location of the drone the same way as move does
+		this.moveTo(x, y);
+		
+		return new Move(this.coordinates.getY(),this.coordinates.getX(),direction,x,y);
+	}
+	
+	// moves the drone to (x, y) (lat, lng), recording the new location and using up one move
+	private void moveTo(double x, double y) {
 		this.coordinates.setLocation(x, y);
 		
-		// add this new location to the list of points the drone has been at
+		// add this new location to the list of points the drone has been at, and to the last 4 points
 		this.points.add(Point.fromLngLat(y, x));
+		this.remember(x, y);
 		
 		// remove one move from the number of moves left
 		this.movesLeft -= 1;
-				
-		return new Move(this.coordinates.getY(),this.coordinates.getX(),direction,x,y);
 	}
 	
-	// checks to see if a desired move intersects with an obstacle. If so, returns the obstacls it intersects with.
-	private Obstacle isMoveinObstacle(Point2D p) {
-		// create a path from the input coordinates to check if it intersects with a building line string
-		List<Point> ps = new ArrayList<>();
-		ps.add(Point.fromLngLat(this.coordinates.getY(), this.coordinates.getX()));
-		ps.add(Point.fromLngLat(p.getY(), p.getX()));
-		var path = LineString.fromLngLats(ps);
-		return PathFinder.checkIllegalMove(path);
+	// adds (x, y) (lat, lng) to the last 4 points the drone has been at, replacing the oldest one
+	private void remember(double x, double y) {
+		this.recentLats[this.oldestRecent] = x;
+		this.recentLngs[this.oldestRecent] = y;
+		this.oldestRecent = (this.oldestRecent + 1) % 4;
+	}
+	
+	// checks to see if a desired move to (x, y) (lat, lng) intersects with an obstacle. If so, returns the obstacle it
+	// intersects with
+	private Obstacle isMoveinObstacle(double x, double y) {
+		this.uncountedChecks++;
+		return this.context.findIllegalMove(this.coordinates.getY(), this.coordinates.getX(), y, x);
+	}
+	
+	// adds the retries and checks made since the last time to the metrics, which are shared by every thread
+	private void countMetrics() {
+		if (this.uncountedRetries > 0) {
+			moveRetries.add(this.uncountedRetries);
+			this.uncountedRetries = 0;
+		}
+		this.context.countIllegalMoveChecks(this.uncountedChecks);
+		this.uncountedChecks = 0;
 	}
 	
 	// returns if the drone is about to go back to a point it has been in the last 4 moves
 	// If so, alter the direction by +-30 according to whatWay to avoid getting stuck.
-	// return where the drone ends up after moving
-	private Point2D getNextBestMove(double angle, int whatWay) {		
+	// return the direction the drone should move in
+	private int getNextBestMove(double angle, int whatWay) {		
 		// round the angle to the nearest ten as that is the range in which the drone can move
 		var direction = (int)(Math.round(angle/10.0) * 10);
 		
 		// ensure the direction of movement is within range use the modulo operator
 		direction = Math.abs(direction % 360);
 		
-		// find the new location of the drone if it moved in the given direction
-		var p = this.getNewLocation(direction);
-		var x = p.getX();
-		var y = p.getY();
-		
 		// check that the drone has visited 4 points first
 		if (this.points.size() > 3) {
-			// for all last 4 points
-			for (var point : this.points.subList(this.points.size()-4, this.points.size())) {
-				var previouspoint = new Point2D.Double(point.latitude(), point.longitude());
+			// for all last 4 points, from the oldest to the newest
+			for (var i = 0; i < 4; i++) {
+				var recent = (this.oldestRecent + i) % 4;
 				// check to see if the new point is the same as a previous one
-				if (previouspoint.equals(new Point2D.Double(x, y))) {
+				if (this.recentLats[recent] == this.newLat(direction) && this.recentLngs[recent] == this.newLng(direction)) {
 					// if so, alter direction
 					direction = Math.abs((direction + 3 * whatWay) % 360);
-					
-					// find the new location of the drone if it moved in the given direction
-					p = this.getNewLocation(direction);
-					x = p.getX();
-					y = p.getY();
 				}
 			}
 		}
 		
-		return new Point2D.Double(x, y);
+		return direction;
 	}
 	
-	// calculates where the drone will end up after moving in a given direction
-	private Point2D getNewLocation(int direction) {
-		// use trigonometry to figure out where the new coordinates are
-		var x = this.coordinates.getX() + 0.0003 * Math.sin(Math.toRadians(direction));
-		var y = this.coordinates.getY() + 0.0003 * Math.cos(Math.toRadians(direction));
-		
-		return new Point2D.Double(x, y);
+	// calculates the latitude the drone will end up at after moving in a given direction
+	private double newLat(int direction) {
+		return this.coordinates.getX() + Directions.latStep(direction);
+	}
+	
+	// calculates the longitude the drone will end up at after moving in a given direction
+	private double newLng(int direction) {
+		return this.coordinates.getY() + Directions.lngStep(direction);
 	}
 	
 	// read the given sensor and create a Feature with it's details. Add the Feature to featureList
@@ -296,7 +413,15 @@ public class Drone {
 		return this.featureList;
 	}
 	
+	public List<Point> getPoints() {
+		return this.points;
+	}
+	
 	public int getMovesLeft() {
 		return this.movesLeft;
 	}
+	
+	public void setPlanner(FlightPlanner planner) {
+		this.planner = planner;
+	}
 }
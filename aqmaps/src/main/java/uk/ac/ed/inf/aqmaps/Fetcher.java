@@ -0,0 +1,150 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+// runs the reads of the data sources which wait on something, such as the web server.
+// the usual build never blocks a thread on a request it can avoid blocking on: groups of requests are sent
+// asynchronously by the HttpClient, and reads started in the background share a few platform threads. Built with the
+// java21 profile (and run on Java 21), VirtualThreadFetcher is used instead, which blocks a virtual thread on every
+// request and background read, so that the data for hundreds of flights can be waited on at once.
+// -Daqmaps.fetch=platform keeps the platform threads even then
+abstract class Fetcher {
+	// the fetcher used by this process, picked the first time it is asked for
+	private static volatile Fetcher fetcher;
+
+	// METHODS //
+	// returns the fetcher to use, the virtual thread one if it was built and the JVM supports it
+	static Fetcher get() {
+		if (fetcher == null) {
+			synchronized (Fetcher.class) {
+				if (fetcher == null) {
+					fetcher = pick();
+				}
+			}
+		}
+		return fetcher;
+	}
+
+	// sends all of the requests at the same time, with at most 'maxInFlight' waiting on the server at once, and
+	// returns the responses in the same order. How long each request takes is recorded with 'latency'. If one fails,
+	// the rest are cancelled and its failure is thrown
+	abstract List<HttpResponse<String>> sendAll(HttpClient client, List<HttpRequest> requests, int maxInFlight,
+			Metrics.Timer latency) throws IOException, InterruptedException;
+
+	// starts the task in the background
+	abstract <T> CompletableFuture<T> fetch(Supplier<T> task);
+
+	// waits for a task started with fetch, throwing its failure as the task threw it
+	static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// returns why a request failed as an IOException, or throws it if it is a RuntimeException
+	protected static IOException requestFailure(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		return new IOException(cause);
+	}
+
+	protected static <T> void cancel(List<? extends Future<T>> futures) {
+		for (var future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	// loads the virtual thread fetcher if it is there and can run on this JVM, and the platform one otherwise
+	private static Fetcher pick() {
+		if ("platform".equals(System.getProperty("aqmaps.fetch")) == false) {
+			try {
+				return (Fetcher) Class.forName("uk.ac.ed.inf.aqmaps.VirtualThreadFetcher").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// not built with the java21 profile, or running on an older JVM
+			}
+		}
+		return new PlatformFetcher();
+	}
+
+	// sends requests asynchronously and runs background reads on a few platform threads
+	private static final class PlatformFetcher extends Fetcher {
+		// how many reads started in the background can run at the same time
+		private static final int BACKGROUND_THREADS = 4;
+
+		private final ExecutorService background = Executors.newFixedThreadPool(BACKGROUND_THREADS, r -> {
+			var thread = new Thread(r, "data-fetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// sends every request with sendAsync from this thread, waiting for a free slot before each one, so that no
+		// thread is blocked on a request
+		@Override
+		List<HttpResponse<String>> sendAll(HttpClient client, List<HttpRequest> requests, int maxInFlight,
+				Metrics.Timer latency) throws IOException, InterruptedException {
+			var inFlight = new Semaphore(maxInFlight);
+			var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+			try {
+				for (var request : requests) {
+					inFlight.acquire();
+					var startTime = System.nanoTime();
+					var response = client.sendAsync(request, BodyHandlers.ofString());
+					// free up a slot once the request has finished, whether it succeeded or not
+					response.whenComplete((r, e) -> {
+						inFlight.release();
+						if (e == null) {
+							latency.recordSince(startTime);
+						}
+					});
+					responses.add(response);
+				}
+
+				// collect the responses in the same order as the requests
+				var results = new ArrayList<HttpResponse<String>>();
+				for (var response : responses) {
+					try {
+						results.add(response.join());
+					} catch (CompletionException e) {
+						throw requestFailure(e.getCause());
+					}
+				}
+				return results;
+			} catch (IOException | InterruptedException | RuntimeException e) {
+				// do not leave requests running which nobody will read
+				cancel(responses);
+				throw e;
+			}
+		}
+
+		@Override
+		<T> CompletableFuture<T> fetch(Supplier<T> task) {
+			return CompletableFuture.supplyAsync(task, this.background);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+// works out the cost of flying between two points as the number of moves the drone really needs, rather than the
+// straight line distance. This is found by simulating a Drone flying between the points, so detours around
+// buildings and boundaries are counted. Results are remembered for the pairs of points used most recently, as the
+// same sensor locations come up day after day
+public final class FlightCostModel {
+	// the most pairs of points whose moves are remembered. Every pair of the sensor locations in the data, along with
+	// a few start positions, fits many times over
+	private static final int MAX_PAIRS = 100_000;
+
+	// the no-fly-zones the simulated drones avoid
+	private final PlanningContext context;
+	// the number of moves needed to fly from one point to another, for the pairs simulated most recently
+	private final BoundedCache<PointPair, Integer> moves = new BoundedCache<>(MAX_PAIRS);
+
+	// CONSTRUCTOR //
+	// only PlanningContext makes models, so that there is one per set of no-fly-zones
+	FlightCostModel(PlanningContext context) {
+		this.context = context;
+	}
+
+	// METHODS //
+	// creates a DistanceMatrix holding the flight cost between the start position and the given sensors.
+	// each cost is the average of the moves needed in both directions, so the matrix stays symmetric, plus the
+	// straight line distance (always well under one move) so that ties go to the shorter flight
+	public DistanceMatrix buildMatrix(Point2D startCoordinates, List<Sensor> sensors) {
+		var size = sensors.size() + 1;
+		var points = new Point2D[size];
+		points[0] = startCoordinates;
+		for (var i = 1; i < size; i++) {
+			points[i] = sensors.get(i - 1).getCoordinates();
+		}
+
+		var costs = new double[size * size];
+		for (var i = 0; i < size; i++) {
+			for (var j = i + 1; j < size; j++) {
+				var there = this.movesBetween(points[i], points[j], j != 0);
+				var back = this.movesBetween(points[j], points[i], i != 0);
+				var cost = (there + back) / 2.0 + points[i].distance(points[j]);
+				costs[i * size + j] = cost;
+				costs[j * size + i] = cost;
+			}
+		}
+		return new DistanceMatrix(size, costs);
+	}
+
+	// returns the number of moves the drone needs to get from one point to another. A drone must make at least one
+	// move to read a sensor, so 'toSensor' makes sure at least one move is counted.
+	// if the drone cannot get there within its moves the most it could ever take (150) is returned
+	public int movesBetween(Point2D from, Point2D to, boolean toSensor) {
+		var key = new PointPair(from, to);
+		var cached = this.moves.get(key);
+		if (cached != null) {
+			return toSensor ? Math.max(1, cached) : cached;
+		}
+
+		// fly a fresh drone between the points and count how many moves it used
+		var drone = new Drone(this.context, from);
+		var arrived = drone.getToPoint(to);
+		var used = arrived ? 150 - drone.getMovesLeft() : 150;
+		this.moves.putIfAbsent(key, used);
+		return toSensor ? Math.max(1, used) : used;
+	}
+
+	// the coordinates of two points, used to look up the moves between them
+	private static final class PointPair {
+		private final double fromX;
+		private final double fromY;
+		private final double toX;
+		private final double toY;
+
+		private PointPair(Point2D from, Point2D to) {
+			this.fromX = from.getX();
+			this.fromY = from.getY();
+			this.toX = to.getX();
+			this.toY = to.getY();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o instanceof PointPair == false) {
+				return false;
+			}
+			var other = (PointPair) o;
+			return this.fromX == other.fromX && this.fromY == other.fromY && this.toX == other.toX && this.toY == other.toY;
+		}
+
+		@Override
+		public int hashCode() {
+			var hash = Double.hashCode(this.fromX);
+			hash = 31 * hash + Double.hashCode(this.fromY);
+			hash = 31 * hash + Double.hashCode(this.toX);
+			return 31 * hash + Double.hashCode(this.toY);
+		}
+	}
+}
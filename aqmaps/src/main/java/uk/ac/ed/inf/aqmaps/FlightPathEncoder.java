@@ -0,0 +1,189 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// writes flight path files without making a String for every line.
+// each line is formatted into a reused StringBuilder, whose append methods format numbers exactly as string
+// concatenation does, and encoded into a reused buffer which is written to a FileChannel whenever it fills up.
+// the text format is "<line>,<beforeLng>,<beforeLat>,<direction>,<afterLng>,<afterLat>,<words>" on each line.
+//
+// flight paths can also be stored in a compact binary format for archiving: a header of the magic number, the
+// version and the number of moves, then one record per move. A record is a byte of flags, the direction as a short
+// and the before coordinates as doubles. The after coordinates follow as doubles only when they are not just the
+// before coordinates the other way around (which is what the drone records), and the words follow as UTF-8 after
+// their length as a short only if the move read a sensor. That takes about 19 bytes a move rather than about 75.
+// an encoder is not thread safe, so every thread should use its own
+public final class FlightPathEncoder {
+	private static final int MAGIC = 0x41514650;
+	private static final int VERSION = 1;
+	// set in a record's flags when the move read a sensor and its words follow
+	private static final int HAS_WORDS = 1;
+	// set in a record's flags when the after coordinates follow
+	private static final int HAS_AFTER = 2;
+	// the smallest a record can be: the flags, the direction and the before coordinates
+	private static final int MIN_RECORD_LENGTH = 19;
+
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	private final StringBuilder line = new StringBuilder(128);
+	private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+
+	// METHODS //
+	// writes the flight path as text, replacing the file if it exists. The file is the same as one written by
+	// Files.write with a line for each move made by string concatenation
+	public void writeText(Path file, List<Move> flightPath) throws IOException {
+		try (var channel = open(file)) {
+			this.writeText(channel, flightPath);
+		}
+	}
+
+	// writes the flight path as text to the given channel, leaving it open
+	public void writeText(WritableByteChannel channel, List<Move> flightPath) throws IOException {
+		this.buffer.clear();
+		// use counter to add the line number to each line
+		var l = 1;
+		for (var move : flightPath) {
+			this.line.setLength(0);
+			this.line.append(l).append(',')
+					.append(move.getBeforeLng()).append(',')
+					.append(move.getBeforeLat()).append(',')
+					.append(move.getDirection()).append(',')
+					.append(move.getAfterLng()).append(',')
+					.append(move.getAfterLat()).append(',')
+					.append(move.getWords());
+			this.putLine(channel);
+			l++;
+		}
+		this.flush(channel);
+	}
+
+	// writes the flight path in the binary format, replacing the file if it exists
+	public void writeBinary(Path file, List<Move> flightPath) throws IOException {
+		try (var channel = open(file)) {
+			this.writeBinary(channel, flightPath);
+		}
+	}
+
+	// writes the flight path in the binary format to the given channel, leaving it open
+	public void writeBinary(WritableByteChannel channel, List<Move> flightPath) throws IOException {
+		this.buffer.clear();
+		this.buffer.putInt(MAGIC).putInt(VERSION).putInt(flightPath.size());
+		for (var move : flightPath) {
+			var words = move.getWords() == null ? null : move.getWords().getBytes(StandardCharsets.UTF_8);
+			if (words != null && words.length > 0xffff) {
+				throw new IOException("The words " + move.getWords() + " are too long to store");
+			}
+			var hasAfter = Double.compare(move.getAfterLng(), move.getBeforeLat()) != 0
+					|| Double.compare(move.getAfterLat(), move.getBeforeLng()) != 0;
+			// the largest a record can be
+			this.ensureSpace(channel, 35 + (words == null ? 0 : words.length));
+
+			this.buffer.put((byte) ((words == null ? 0 : HAS_WORDS) | (hasAfter ? HAS_AFTER : 0)));
+			this.buffer.putShort((short) move.getDirection());
+			this.buffer.putDouble(move.getBeforeLng()).putDouble(move.getBeforeLat());
+			if (hasAfter) {
+				this.buffer.putDouble(move.getAfterLng()).putDouble(move.getAfterLat());
+			}
+			if (words != null) {
+				this.buffer.putShort((short) words.length).put(words);
+			}
+		}
+		this.flush(channel);
+	}
+
+	// reads a flight path written in the binary format
+	public static List<Move> readBinary(Path file) throws IOException {
+		ByteBuffer in;
+		try (var channel = FileChannel.open(file)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+			throw new IOException(file + " is not a binary flight path file");
+		}
+		var count = in.getInt();
+		// check the count before making room for that many moves, so that a corrupt file cannot ask for too much
+		if (count < 0 || count > in.remaining() / MIN_RECORD_LENGTH) {
+			throw new IOException(file + " holds an impossible number of moves (" + count + ")");
+		}
+		var flightPath = new ArrayList<Move>(count);
+		try {
+			for (var i = 0; i < count; i++) {
+				var flags = in.get();
+				var direction = (int) in.getShort();
+				var beforeLng = in.getDouble();
+				var beforeLat = in.getDouble();
+				var afterLng = beforeLat;
+				var afterLat = beforeLng;
+				if ((flags & HAS_AFTER) != 0) {
+					afterLng = in.getDouble();
+					afterLat = in.getDouble();
+				}
+				var move = new Move(beforeLng, beforeLat, direction, afterLng, afterLat);
+				if ((flags & HAS_WORDS) != 0) {
+					var words = new byte[in.getShort() & 0xffff];
+					in.get(words);
+					move.setWords(new String(words, StandardCharsets.UTF_8));
+				}
+				flightPath.add(move);
+			}
+		} catch (RuntimeException e) {
+			throw new IOException(file + " ends part way through a move", e);
+		}
+		return flightPath;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// opens the file for writing, replacing it if it exists
+	static FileChannel open(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+	}
+
+	// encodes the line as UTF-8 into the buffer, followed by a line separator
+	private void putLine(WritableByteChannel channel) throws IOException {
+		// a character takes at most 3 bytes
+		this.ensureSpace(channel, this.line.length() * 3 + LINE_SEPARATOR.length);
+		for (var i = 0; i < this.line.length(); i++) {
+			var c = this.line.charAt(i);
+			if (c < 0x80) {
+				this.buffer.put((byte) c);
+			} else {
+				// only words can hold anything other than ASCII, so leave the rest of the line to the slow path
+				this.buffer.put(this.line.substring(i).getBytes(StandardCharsets.UTF_8));
+				break;
+			}
+		}
+		this.buffer.put(LINE_SEPARATOR);
+	}
+
+	// makes sure there are at least 'bytes' bytes free in the buffer, writing it out or growing it if there are not
+	private void ensureSpace(WritableByteChannel channel, int bytes) throws IOException {
+		if (this.buffer.remaining() >= bytes) {
+			return;
+		}
+		this.flush(channel);
+		if (this.buffer.capacity() < bytes) {
+			this.buffer = ByteBuffer.allocate(Math.max(bytes, this.buffer.capacity() * 2));
+		}
+	}
+
+	// writes everything in the buffer to the channel and empties it
+	private void flush(WritableByteChannel channel) throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,318 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// plans the shortest legal sequence of moves between two points with the A* search algorithm.
+// the drone can only move 0.0003 in one of 36 directions, so the search is over the points it can reach that way.
+// the heuristic is the shortest distance to the target around the no-fly-zones, found with a visibility graph of the
+// corners of the no-fly-zones, divided by the length of a move. That never overestimates the moves left, so the
+// plans found are as short as the search allows
+public final class FlightPlanner {
+	// the distance the drone travels in one move
+	private static final double STEP = Directions.STEP;
+	// how close the drone needs to be to a point to have reached it
+	private static final double RANGE = 0.0002;
+	// points closer together than this are treated as the same point by the search, so it does not explore many
+	// almost identical positions reached in different orders
+	private static final double QUANTUM = 0.00002;
+	// the most points the search will look at for one plan before giving up
+	private static final int MAX_EXPANSIONS = 50000;
+	// lines which only touch within this fraction of their length are not treated as crossing in the visibility graph
+	private static final double TOUCH_TOLERANCE = 1e-9;
+	// the most targets whose corner distances are remembered. Far more than the sensors and start positions of a batch
+	private static final int MAX_TARGETS = 4096;
+
+	// the no-fly-zones each move is checked against
+	private final PlanningContext context;
+	// the corners of the no-fly-zones, which are the nodes of the visibility graph
+	private final double[] cornerXs;
+	private final double[] cornerYs;
+	// the edges of the no-fly-zones as (x1, y1, x2, y2), with x being latitude and y being longitude like in Drone
+	private final double[] edges;
+	// the shortest distance around the no-fly-zones from each corner to a target, for the targets planned to most
+	// recently
+	private final BoundedCache<Point2D, double[]> cornerDistances = new BoundedCache<>(MAX_TARGETS);
+
+	// CONSTRUCTOR //
+	// only PlanningContext makes planners, so that there is one per set of no-fly-zones
+	FlightPlanner(PlanningContext context) {
+		this.context = context;
+
+		List<double[]> corners = new ArrayList<>();
+		List<double[]> edgeList = new ArrayList<>();
+		for (var obstacle : context.getNoFlyZones()) {
+			// the last point of a ring is the same as the first, so it is not a separate corner
+			for (var i = 0; i < obstacle.getPointCount() - 1; i++) {
+				corners.add(new double[] {obstacle.getLat(i), obstacle.getLng(i)});
+			}
+			for (var i = 0; i < obstacle.getPointCount(); i++) {
+				var next = (i + 1) % obstacle.getPointCount();
+				edgeList.add(new double[] {obstacle.getLat(i), obstacle.getLng(i), obstacle.getLat(next), obstacle.getLng(next)});
+			}
+		}
+		this.cornerXs = new double[corners.size()];
+		this.cornerYs = new double[corners.size()];
+		for (var c = 0; c < corners.size(); c++) {
+			this.cornerXs[c] = corners.get(c)[0];
+			this.cornerYs[c] = corners.get(c)[1];
+		}
+		this.edges = new double[edgeList.size() * 4];
+		for (var e = 0; e < edgeList.size(); e++) {
+			System.arraycopy(edgeList.get(e), 0, this.edges, e * 4, 4);
+		}
+	}
+
+	// METHODS //
+	// returns the directions of the shortest sequence of legal moves from 'start' to within 0.0002 of 'target', using
+	// at most 'maxMoves' moves. A drone must move at least once to read a sensor, so 'toSensor' makes sure the plan
+	// has at least one move. Of the plans with the fewest moves, the one ending closest to 'next' (the point the drone
+	// heads to afterwards) is picked, as that can save moves on the way there. 'next' may be null.
+	// returns null if no plan could be found. Any number of plans can be worked out at once on different threads
+	public int[] plan(Point2D start, Point2D target, Point2D next, boolean toSensor, int maxMoves) {
+		var distances = this.distancesTo(target);
+		var nextDistances = next == null ? null : this.distancesTo(next);
+		var search = new Search(target, distances);
+		var root = search.addNode(start.getX(), start.getY(), 0, -1, -1);
+
+		var open = new PriorityQueue<Integer>((a, b) -> {
+			var byCost = Double.compare(search.estimates[a], search.estimates[b]);
+			// between equally good points, carry on with the one furthest along
+			return byCost != 0 ? byCost : Integer.compare(search.moves[b], search.moves[a]);
+		});
+		open.add(root);
+
+		// the best end point found so far, how many moves it takes and how far it is from 'next'
+		var best = -1;
+		var bestMoves = maxMoves;
+		var bestDistance = Double.POSITIVE_INFINITY;
+		var expansions = 0;
+		// the moves checked against the no-fly-zones, added to the metrics once the plan is done
+		var checks = 0L;
+		while (open.isEmpty() == false && expansions < MAX_EXPANSIONS) {
+			var node = open.poll();
+			// once a plan is found, only other points that could end a plan just as short are worth looking at
+			if (best != -1 && search.estimates[node] > bestMoves + TOUCH_TOLERANCE) {
+				break;
+			}
+			// skip points which have since been reached in fewer moves
+			if (search.moves[node] > search.fewestMoves.get(search.keys[node])) {
+				continue;
+			}
+			var x = search.xs[node];
+			var y = search.ys[node];
+			if (Point2D.distance(x, y, target.getX(), target.getY()) <= RANGE && (search.moves[node] > 0 || toSensor == false)) {
+				if (next == null) {
+					this.context.countIllegalMoveChecks(checks);
+					return search.directions(node);
+				}
+				var distance = this.distanceAround(x, y, next, nextDistances);
+				if (distance < bestDistance) {
+					best = node;
+					bestMoves = search.moves[node];
+					bestDistance = distance;
+				}
+				continue;
+			}
+			if (search.moves[node] >= bestMoves) {
+				continue;
+			}
+			expansions++;
+
+			for (var direction = 0; direction < 360; direction += 10) {
+				// work out the new position the same way Drone does, so the plan can be flown exactly
+				var newX = x + Directions.latStep(direction);
+				var newY = y + Directions.lngStep(direction);
+				if (PathFinder.isOutofBounds(newX, newY, 0) != 0) {
+					continue;
+				}
+				checks++;
+				if (this.context.findIllegalMove(y, x, newY, newX) != null) {
+					continue;
+				}
+				var key = key(newX, newY);
+				var newMoves = search.moves[node] + 1;
+				var fewest = search.fewestMoves.get(key);
+				if (fewest != null && fewest <= newMoves) {
+					continue;
+				}
+				open.add(search.addNode(newX, newY, newMoves, node, direction));
+			}
+		}
+		this.context.countIllegalMoveChecks(checks);
+		return best == -1 ? null : search.directions(best);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// returns the shortest distance around the no-fly-zones from every corner to the given target, working it out the
+	// first time the target is planned to. It is worked out outside of the cache, so that other plans are not held up
+	private double[] distancesTo(Point2D target) {
+		var distances = this.cornerDistances.get(target);
+		if (distances == null) {
+			distances = this.cornerDistances.putIfAbsent((Point2D) target.clone(), this.distancesToTarget(target));
+		}
+		return distances;
+	}
+
+	// returns the points the search treats as the same, as one number
+	private static long key(double x, double y) {
+		var qx = Math.round(x / QUANTUM);
+		var qy = Math.round(y / QUANTUM);
+		return (qx << 32) ^ (qy & 0xffffffffL);
+	}
+
+	// works out the shortest distance around the no-fly-zones from every corner to the given target using
+	// Dijkstra's algorithm over the visibility graph
+	private double[] distancesToTarget(Point2D target) {
+		var corners = this.cornerXs.length;
+		var distances = new double[corners];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		var done = new boolean[corners];
+
+		// the corners which can see the target directly start with their straight line distance
+		for (var c = 0; c < corners; c++) {
+			if (this.isVisible(this.cornerXs[c], this.cornerYs[c], target.getX(), target.getY())) {
+				distances[c] = Point2D.distance(this.cornerXs[c], this.cornerYs[c], target.getX(), target.getY());
+			}
+		}
+
+		for (var n = 0; n < corners; n++) {
+			// take the closest corner not done yet
+			var closest = -1;
+			for (var c = 0; c < corners; c++) {
+				if (done[c] == false && (closest == -1 || distances[c] < distances[closest])) {
+					closest = c;
+				}
+			}
+			if (distances[closest] == Double.POSITIVE_INFINITY) {
+				break;
+			}
+			done[closest] = true;
+
+			// see if going through it gets any of the other corners closer
+			for (var c = 0; c < corners; c++) {
+				if (done[c]) {
+					continue;
+				}
+				var through = distances[closest] + Point2D.distance(this.cornerXs[closest], this.cornerYs[closest], this.cornerXs[c], this.cornerYs[c]);
+				if (through < distances[c] && this.isVisible(this.cornerXs[closest], this.cornerYs[closest], this.cornerXs[c], this.cornerYs[c])) {
+					distances[c] = through;
+				}
+			}
+		}
+		return distances;
+	}
+
+	// returns the shortest distance from (x, y) to the target around the no-fly-zones, as a lower bound
+	private double distanceAround(double x, double y, Point2D target, double[] distances) {
+		var direct = Point2D.distance(x, y, target.getX(), target.getY());
+		if (this.isVisible(x, y, target.getX(), target.getY())) {
+			return direct;
+		}
+		var shortest = Double.POSITIVE_INFINITY;
+		for (var c = 0; c < this.cornerXs.length; c++) {
+			var through = Point2D.distance(x, y, this.cornerXs[c], this.cornerYs[c]) + distances[c];
+			if (through < shortest && this.isVisible(x, y, this.cornerXs[c], this.cornerYs[c])) {
+				shortest = through;
+			}
+		}
+		// the straight line distance is always a lower bound, even if the graph could not find a way round
+		return Math.max(direct, shortest == Double.POSITIVE_INFINITY ? direct : shortest);
+	}
+
+	// checks if the line between two points does not cross any edge of the no-fly-zones. Lines which only touch an
+	// edge, such as ones between corners, count as visible. This makes the graph distances a lower bound on the
+	// real ones, which is what the heuristic needs
+	private boolean isVisible(double x1, double y1, double x2, double y2) {
+		for (var e = 0; e < this.edges.length; e += 4) {
+			var ox1 = this.edges[e];
+			var oy1 = this.edges[e + 1];
+			var ox2 = this.edges[e + 2];
+			var oy2 = this.edges[e + 3];
+			var denominator = (ox2 - ox1) * (y2 - y1) - (oy2 - oy1) * (x2 - x1);
+			if (denominator == 0) {
+				continue;
+			}
+			var ua = ((oy2 - oy1) * (x1 - ox1) - (ox2 - ox1) * (y1 - oy1)) / denominator;
+			var ub = ((y2 - y1) * (x1 - ox1) - (x2 - x1) * (y1 - oy1)) / denominator;
+			if (TOUCH_TOLERANCE < ua && ua < 1 - TOUCH_TOLERANCE && TOUCH_TOLERANCE < ub && ub < 1 - TOUCH_TOLERANCE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// the points found by one search. Each point is stored across the arrays at the same index
+	private final class Search {
+		private final Point2D target;
+		private final double[] distances;
+		private double[] xs = new double[1024];
+		private double[] ys = new double[1024];
+		private int[] moves = new int[1024];
+		private int[] parents = new int[1024];
+		private int[] steps = new int[1024];
+		private long[] keys = new long[1024];
+		// the moves needed so far plus the heuristic estimate of the moves left, for every point
+		private double[] estimates = new double[1024];
+		private int size = 0;
+		// the fewest moves each point has been reached in so far
+		private final Map<Long, Integer> fewestMoves = new HashMap<>();
+		// the heuristic for each point worked out so far
+		private final Map<Long, Double> heuristics = new HashMap<>();
+
+		private Search(Point2D target, double[] distances) {
+			this.target = target;
+			this.distances = distances;
+		}
+
+		// adds a point reached by moving in 'direction' from point 'parent', returning its index
+		private int addNode(double x, double y, int moveCount, int parent, int direction) {
+			if (this.size == this.xs.length) {
+				var capacity = this.size * 2;
+				this.xs = Arrays.copyOf(this.xs, capacity);
+				this.ys = Arrays.copyOf(this.ys, capacity);
+				this.moves = Arrays.copyOf(this.moves, capacity);
+				this.parents = Arrays.copyOf(this.parents, capacity);
+				this.steps = Arrays.copyOf(this.steps, capacity);
+				this.keys = Arrays.copyOf(this.keys, capacity);
+				this.estimates = Arrays.copyOf(this.estimates, capacity);
+			}
+			var key = key(x, y);
+			var heuristic = this.heuristics.get(key);
+			if (heuristic == null) {
+				// the moves needed to cover the distance left, less the distance at which the target counts as reached
+				var around = distanceAround(x, y, this.target, this.distances);
+				heuristic = Math.max(0, (around - RANGE) / STEP);
+				this.heuristics.put(key, heuristic);
+			}
+
+			var node = this.size++;
+			this.xs[node] = x;
+			this.ys[node] = y;
+			this.moves[node] = moveCount;
+			this.parents[node] = parent;
+			this.steps[node] = direction;
+			this.keys[node] = key;
+			this.estimates[node] = moveCount + heuristic;
+			this.fewestMoves.put(key, moveCount);
+			return node;
+		}
+
+		// returns the directions of the moves taken to reach the given point, in order
+		private int[] directions(int node) {
+			var plan = new int[this.moves[node]];
+			for (var n = node; this.parents[n] != -1; n = this.parents[n]) {
+				plan[this.moves[n] - 1] = this.steps[n];
+			}
+			return plan;
+		}
+	}
+}
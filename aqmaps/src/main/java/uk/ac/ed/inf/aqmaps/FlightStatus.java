@@ -0,0 +1,13 @@
+package uk.ac.ed.inf.aqmaps;
+
+// how far the drone got with a flight
+public enum FlightStatus {
+	// every sensor was read and the drone got back to where it started
+	COMPLETE,
+	// the drone ran out of moves before reading every sensor
+	UNFINISHED,
+	// every sensor was read but the drone ran out of moves on its way back
+	NOT_RETURNED,
+	// the flight could not be planned, e.g. because its data could not be read
+	FAILED
+}
@@ -0,0 +1,202 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// reads the data from the web server running on localhost at a given port
+public final class HttpDataSource implements DataSource {
+	private static final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	// the maximum number of what3words requests that may be waiting on the server at the same time.
+	// can be changed with -Daqmaps.maxRequestsInFlight=<n> or setMaxRequestsInFlight
+	private static volatile int maxRequestsInFlight = Integer.getInteger("aqmaps.maxRequestsInFlight", 8);
+
+	// the source for every port that has been read from in this process, so that repeated runs share what it remembers
+	private static final Map<String, HttpDataSource> sources = new ConcurrentHashMap<>();
+
+	// how long the requests to each kind of page take
+	private static final Metrics.Timer sensorsLatency = Metrics.timer("http.sensors");
+	private static final Metrics.Timer wordsLatency = Metrics.timer("http.words");
+	private static final Metrics.Timer buildingsLatency = Metrics.timer("http.buildings");
+
+	private final String port;
+	// the buildings most recently read from the server, along with what is needed to check if they have changed
+	private volatile CachedBuildings cachedBuildings;
+
+	private HttpDataSource(String port) {
+		this.port = port;
+	}
+
+	// METHODS //
+	// returns the source for the web server at the given port
+	public static HttpDataSource forPort(String port) {
+		return sources.computeIfAbsent(port, HttpDataSource::new);
+	}
+
+	// reads the sensors to be visited on the given date from the server
+	@Override
+	public List<Sensor> readSensors(String day, String month, String year) {
+		var response = this.send(this.request("/maps/" + year + "/" + month + "/" + day + "/air-quality-data.json").build(),
+				sensorsLatency);
+		// if the page cannot be found, the date is not on the server
+		if (response.statusCode() == 404) {
+			throw DataSourceException.notFound("Unable to find the sensor data for the given date on the server.");
+		}
+		return IO.parseSensors(response.body());
+	}
+
+	// sends a what3words request for every location at once through the Fetcher, limiting how many can be waiting on
+	// the server at a time. The usual build sends them asynchronously, and the java21 build on virtual threads
+	@Override
+	public List<Point2D> readCoordinates(List<String> locations) {
+		var requests = new ArrayList<HttpRequest>();
+		for (var location : locations) {
+			requests.add(this.wordsRequest(location));
+		}
+		List<HttpResponse<String>> responses;
+		try {
+			responses = Fetcher.get().sendAll(client, requests, maxRequestsInFlight, wordsLatency);
+		} catch (IOException e) {
+			throw this.unableToConnect(e);
+		} catch (InterruptedException e) {
+			// if the thread is interrupted while waiting on the requests, treat it the same as a failed connection
+			Thread.currentThread().interrupt();
+			throw this.unableToConnect(e);
+		}
+
+		// the responses come back in the same order as the locations
+		var coordinates = new ArrayList<Point2D>();
+		for (var response : responses) {
+			if (response.statusCode() == 404) {
+				throw DataSourceException.notFound("Unable to find the word data for the given date on the server.");
+			}
+			coordinates.add(IO.parseCoordinates(response.body()));
+		}
+		return coordinates;
+	}
+
+	// reads the buildings from the server. They are only parsed again if the server says the file has changed, so
+	// repeated calls share the same unmodifiable list
+	@Override
+	public List<Obstacle> readBuildings() {
+		var cached = this.cachedBuildings;
+
+		var requestBuilder = this.request("/buildings/no-fly-zones.geojson");
+		// if the buildings have been read before, ask the server to only send them again if they have changed
+		if (cached != null && cached.etag != null) {
+			requestBuilder.header("If-None-Match", cached.etag);
+		}
+		if (cached != null && cached.lastModified != null) {
+			requestBuilder.header("If-Modified-Since", cached.lastModified);
+		}
+		var response = this.send(requestBuilder.build(), buildingsLatency);
+
+		// if the page cannot be found, the buildings are not on the server
+		if (response.statusCode() == 404) {
+			throw DataSourceException.notFound("Unable to find the building data on the server.");
+		}
+
+		// if the server says the file has not changed, use the buildings that were already read
+		if (cached != null && response.statusCode() == 304) {
+			return cached.buildings;
+		}
+
+		var etag = response.headers().firstValue("ETag").orElse(null);
+		var lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+		// the server may not support ETag or Last-Modified, so also compare the contents of the file
+		var hash = sha256(response.body());
+		if (cached != null && MessageDigest.isEqual(hash, cached.hash)) {
+			this.cachedBuildings = new CachedBuildings(etag, lastModified, hash, cached.buildings);
+			return cached.buildings;
+		}
+
+		var buildings = IO.parseBuildings(response.body());
+		this.cachedBuildings = new CachedBuildings(etag, lastModified, hash, buildings);
+		return buildings;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// starts a request for the given path on the server
+	private HttpRequest.Builder request(String path) {
+		return HttpRequest.newBuilder()
+				.uri(URI.create("http://localhost:" + this.port + path))
+				.GET();
+	}
+
+	// creates the request for the details of the given what3words
+	private HttpRequest wordsRequest(String words) {
+		// create a list of strings, each cell containing one of the words
+		String[] w = words.split("\\.");
+		return this.request("/words/" + w[0] + "/" + w[1] + "/" + w[2] + "/details.json").build();
+	}
+
+	// sends the request and waits for the response, recording how long it took with the given timer
+	private HttpResponse<String> send(HttpRequest request, Metrics.Timer latency) {
+		var startTime = System.nanoTime();
+		try {
+			var response = client.send(request, BodyHandlers.ofString());
+			latency.recordSince(startTime);
+			return response;
+		} catch (IOException e) {
+			throw this.unableToConnect(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw this.unableToConnect(e);
+		}
+	}
+
+	private DataSourceException unableToConnect(Throwable cause) {
+		return new DataSourceException("Unable to connect to the server at port " + this.port + ".", cause);
+	}
+
+	// returns the SHA-256 hash of the given string
+	private static byte[] sha256(String s) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// the buildings read from the server, along with what is needed to check if they have changed on the server
+	private static final class CachedBuildings {
+		private final String etag;
+		private final String lastModified;
+		private final byte[] hash;
+		private final List<Obstacle> buildings;
+
+		private CachedBuildings(String etag, String lastModified, byte[] hash, List<Obstacle> buildings) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.buildings = buildings;
+		}
+	}
+
+	// SETTERS //
+	public static void setMaxRequestsInFlight(int maxRequestsInFlightInput) {
+		if (maxRequestsInFlightInput < 1) {
+			throw new IllegalArgumentException("At least one request must be allowed in flight");
+		}
+		maxRequestsInFlight = maxRequestsInFlightInput;
+	}
+}
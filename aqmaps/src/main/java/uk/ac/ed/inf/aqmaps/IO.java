@@ -1,100 +1,52 @@
 package uk.ac.ed.inf.aqmaps;
 
 import java.awt.geom.Point2D;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import com.google.gson.Gson;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.mapbox.geojson.Feature;
 import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
 
+// reads the files the data sources serve and writes the files the program produces.
+// the data itself is read through a DataSource (see HttpDataSource and DirectoryDataSource)
 //make this class final to emulate a static class
 public final class IO {	
-	private static final HttpClient client = HttpClient.newBuilder()
-			.connectTimeout(Duration.ofSeconds(10))
-			.build();
+	// each thread writes flight paths with its own encoder, so that its buffers are reused from one file to the next
+	private static final ThreadLocal<FlightPathEncoder> encoders = ThreadLocal.withInitial(FlightPathEncoder::new);
 	
 	// do not allow this class to be instantiated
 	private IO() {}
 	
-	// reads the sensors to be visited on the given date from the web server at the given port.
-	// uses the data from the server to create a list of Sensors which is returned
-	public static List<Sensor> readSensors(String day, String month, String year, String port) {
-		// create request for data
-		var request = HttpRequest.newBuilder()
-				.uri(URI.create("http://localhost:"+port+"/maps/"+year+"/"+month+"/"+day+"/air-quality-data.json"))
-				.GET()
-				.build();		
-
-		// initialise response
-		HttpResponse<String> response = null;
-		try {
-			// send the request and save the response
-			response = client.send(request, BodyHandlers.ofString());
-		} catch (IOException | InterruptedException e) {
-			// if the connection is unsuccessful, print an error and exit the program
-			System.out.println("Fatal error: Unable to connect to the server at port " + port + ".");
-			System.exit(1);
-		}
-		
-		// if the page cannot be found, print a message stating so and exit the program
-		if (response.statusCode() == 404) {
-			System.out.println("Unable to find the sensor data for the given date on the server. Terminating...");
-			System.exit(1);
-		}
-
-		// use gson to parse the response and use it to create a list of Sensors
+	// uses gson to parse the contents of an air-quality-data.json file into a list of Sensors. Their coordinates are
+	// not set
+	static List<Sensor> parseSensors(String json) {
 		var gson = new Gson();
-		List<Sensor> sensors = gson.fromJson(response.body(), new TypeToken<List<Sensor>>(){}.getType());
-		
-		// for every sensor find the coordinates according to what3words and save the coordinates to the Sensor
-		for (var sensor : sensors) {
-			sensor.setCoordinates(wordsToCoords(port, sensor.getLocation()));
-		}
-		
-		return sensors;
+		return gson.fromJson(json, new TypeToken<List<Sensor>>(){}.getType());
 	}
 	
-	// reads the buildings from the web server at the given port.
-	// uses the data from the server to create a list of Obstacles which is returned
-	public static List<Obstacle> readBuildings(String port) {
-		// create request for data
-		var request = HttpRequest.newBuilder()
-				.uri(URI.create("http://localhost:"+port+"/buildings/no-fly-zones.geojson"))
-				.GET()
-				.build();
-		
-		// initialise response
-		HttpResponse<String> response = null;
-		try {
-			// send the request and save the response
-			response = client.send(request, BodyHandlers.ofString());
-		} catch (IOException | InterruptedException e) {
-			// if the connection is unsuccessful, print an error and exit the program
-			System.out.println("Fatal error: Unable to connect to the server at port " + port + ".");
-			System.exit(1);
-		}
-		
-		// if the page cannot be found, print a message stating so and exit the program
-		if (response.statusCode() == 404) {
-			System.out.println("Unable to find the building data on the server. Terminating...");
-			System.exit(1);
-		}
+	// returns the coordinates held in the contents of a what3words details.json file
+	static Point2D parseCoordinates(String json) {
+		// parse the Json string with gson into a JsonObject
+		var obj = JsonParser.parseString(json).getAsJsonObject();
+		// get the coordinates attribute from the object
+		var coordinatesObj = obj.get("coordinates").getAsJsonObject();
 		
-		// convert the response from a string to a FeatureCollection
-		var fc = FeatureCollection.fromJson(response.body());
+		// create a Point2D using the lat and lng attributes of the object
+		return new Point2D.Double(coordinatesObj.get("lat").getAsDouble(), coordinatesObj.get("lng").getAsDouble());
+	}
+	
+	// converts the contents of a no-fly-zones.geojson file into an unmodifiable list of Obstacles
+	static List<Obstacle> parseBuildings(String geojson) {
+		// convert the string to a FeatureCollection
+		var fc = FeatureCollection.fromJson(geojson);
 	    // initialise the list
 		List<Obstacle> buildings = new ArrayList<Obstacle>();
 		
@@ -108,46 +60,66 @@ public final class IO {
 			buildings.add(b);
 		}
 		
-		return buildings;
+		// make the list unmodifiable as it may be shared between runs
+		return List.copyOf(buildings);
 	}
 	
 	// write a readings file using the given FeatureCollection and date
 	public static void writeReadings(FeatureCollection fc, String day, String month, String year) {
-		PrintWriter out = null;
-		try {
-			out = new PrintWriter("readings-"+day+"-"+month+"-"+year+".geojson");
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			System.exit(1);
+		writeReadings(Paths.get(""), fc, day, month, year);
+	}
+	
+	// write a readings file using the given FeatureCollection and date into the given directory
+	public static void writeReadings(Path directory, FeatureCollection fc, String day, String month, String year) {
+		try (var out = new ReadingsWriter(readingsFile(directory, day, month, year))) {
+			for (var feature : fc.features()) {
+				out.writeFeature(feature);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		out.print(fc.toJson());
-		out.close();
 	}
 	
-	// write a readings file using the given Moves and date
+	// write a readings file using the given sensor features, path and date
+	public static void writeReadings(List<Feature> readings, List<Point> path, String day, String month, String year) {
+		writeReadings(Paths.get(""), readings, path, day, month, year);
+	}
+	
+	// write a readings file for the given date into the given directory, made of the sensor features followed by the
+	// path the drone flew along. Each feature is written out as it is reached, without building a FeatureCollection
+	public static void writeReadings(Path directory, List<Feature> readings, List<Point> path, String day, String month,
+			String year) {
+		try (var out = new ReadingsWriter(readingsFile(directory, day, month, year))) {
+			for (var feature : readings) {
+				out.writeFeature(feature);
+			}
+			out.writePath(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// write a flight path file using the given Moves and date
 	public static void writeFlightPath(List<Move> flightPath, String day, String month, String year) {
-		List<String> lines = new ArrayList<>();
-		// use counter to add the line number to each line
-		int l = 1;
-		// for every move in the flight path
-		for (var move : flightPath) {
-			// create the line using the line number and all the attributes of the Move
-			var line = l + ","
-						+ move.getBeforeLng() + ","
-						+ move.getBeforeLat() + ","
-						+ move.getDirection() + ","
-						+ move.getAfterLng() + ","
-						+ move.getAfterLat() + ","
-						+ move.getWords();
-			lines.add(line);
-			l++;
+		writeFlightPath(Paths.get(""), flightPath, day, month, year);
+	}
+	
+	// write a flight path file using the given Moves and date into the given directory
+	public static void writeFlightPath(Path directory, List<Move> flightPath, String day, String month, String year) {
+		try {
+			encoders.get().writeText(flightPathFile(directory, day, month, year, false), flightPath);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		// write the file using the created lines
-		var file = Paths.get("flightpath-"+day+"-"+month+"-"+year+".txt");
+	}
+	
+	// write a flight path file using the given Moves and date into the given directory, in the compact binary format
+	// of FlightPathEncoder
+	public static void writeBinaryFlightPath(Path directory, List<Move> flightPath, String day, String month, String year) {
 		try {
-			Files.write(file, lines);
+			encoders.get().writeBinary(flightPathFile(directory, day, month, year, true), flightPath);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException(e);
 		}
 	}
 	
@@ -155,40 +127,11 @@ public final class IO {
 	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	// returns the coordinates of given what3words from the server through the given port
-	private static Point2D wordsToCoords(String port, String words) {
-		// create a list of strings, each cell containing one of the words
-		String[] w = words.split("\\.");
-		// create request for data
-		var request = HttpRequest.newBuilder()
-				.uri(URI.create("http://localhost:"+port+"/words/"+w[0]+"/"+w[1]+"/"+w[2]+"/details.json"))
-				.GET()
-				.build();
-		
-		// initialise response
-		HttpResponse<String> response = null;
-		try {
-			// send the request and save the response
-			response = client.send(request, BodyHandlers.ofString());
-		} catch (IOException | InterruptedException e) {
-			// if the connection is unsuccessful, print an error and exit the program
-			System.out.println("Fatal error: Unable to connect to the server at port " + port + ".");
-			System.exit(1);
-		}
-		
-		// if the page cannot be found, print a message stating so and exit the program
-		if (response.statusCode() == 404) {
-			System.out.println("Unable to find the word data for the given date on the server. Terminating...");
-			System.exit(1);
-		}
-		
-		// parse the returned Json string with gson into a JsonObject
-		var obj = JsonParser.parseString(response.body()).getAsJsonObject();
-		// get the coordinates attribute from the object
-		var coordinatesObj = obj.get("coordinates").getAsJsonObject();
-		
-		// create a Point2D using the lat and lng attributes of the object
-		var coordinates = new Point2D.Double(coordinatesObj.get("lat").getAsDouble(), coordinatesObj.get("lng").getAsDouble());
-		return coordinates;
+	static Path readingsFile(Path directory, String day, String month, String year) {
+		return directory.resolve("readings-"+day+"-"+month+"-"+year+".geojson");
+	}
+	
+	static Path flightPathFile(Path directory, String day, String month, String year, boolean binary) {
+		return directory.resolve("flightpath-"+day+"-"+month+"-"+year+(binary ? ".bin" : ".txt"));
 	}
 }
@@ -0,0 +1,214 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import com.google.gson.stream.JsonWriter;
+
+// counts what the program spends its time on, so that a run can be compared with earlier ones.
+// a counter counts how often something happens and a timer how often something happens along with how long it took
+// in total. Both are kept in LongAdders, so adding to them from many threads at once costs a few nanoseconds, and the
+// hottest loops add up what they did locally and add it once when they finish.
+// everything is kept for the life of the process: it can be watched through JMX as uk.ac.ed.inf.aqmaps:type=Metrics
+// once register has been called, and a run can write what changed while it ran to a JSON file with --metrics
+public final class Metrics {
+	// every counter and timer made so far, by name, sorted so that they are always listed in the same order
+	private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+	private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+	// do not allow this class to be instantiated
+	private Metrics() {}
+
+	// METHODS //
+	// returns the counter with the given name, making it the first time it is asked for
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	// returns the timer with the given name, making it the first time it is asked for
+	public static Timer timer(String name) {
+		return timers.computeIfAbsent(name, n -> new Timer());
+	}
+
+	// makes the metrics visible through JMX. Does nothing if they already are
+	public static synchronized void register() {
+		try {
+			var server = ManagementFactory.getPlatformMBeanServer();
+			var name = new ObjectName("uk.ac.ed.inf.aqmaps:type=Metrics");
+			if (server.isRegistered(name) == false) {
+				server.registerMBean(new MetricsBean(), name);
+			}
+		} catch (JMException e) {
+			System.out.println("Warning: Unable to register the metrics with JMX.");
+		}
+	}
+
+	// returns the value of every counter, and the count and total nanoseconds of every timer as <name>.count and
+	// <name>.nanos
+	public static Map<String, Long> snapshot() {
+		var values = new TreeMap<String, Long>();
+		for (var entry : counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		for (var entry : timers.entrySet()) {
+			values.put(entry.getKey() + ".count", entry.getValue().getCount());
+			values.put(entry.getKey() + ".nanos", entry.getValue().getNanos());
+		}
+		return values;
+	}
+
+	// writes what has changed since the snapshot 'before' was taken to the given file as JSON. Counters are written as
+	// numbers and timers as objects holding their count and their total and mean time in milliseconds
+	public static void write(Path file, Map<String, Long> before, long wallNanos) {
+		var after = snapshot();
+		try (var out = new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+			out.setIndent("  ");
+			out.beginObject();
+			out.name("wallMillis").value(wallNanos / 1e6);
+			out.name("counters").beginObject();
+			for (var name : counters.keySet()) {
+				out.name(name).value(change(before, after, name));
+			}
+			out.endObject();
+			out.name("timers").beginObject();
+			for (var name : timers.keySet()) {
+				var count = change(before, after, name + ".count");
+				var millis = change(before, after, name + ".nanos") / 1e6;
+				out.name(name).beginObject();
+				out.name("count").value(count);
+				out.name("totalMillis").value(millis);
+				out.name("meanMillis").value(count == 0 ? 0 : millis / count);
+				out.endObject();
+			}
+			out.endObject();
+			out.endObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static long change(Map<String, Long> before, Map<String, Long> after, String name) {
+		return after.getOrDefault(name, 0L) - before.getOrDefault(name, 0L);
+	}
+
+	// how often something has happened
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		private Counter() {}
+
+		public void increment() {
+			this.count.increment();
+		}
+
+		public void add(long n) {
+			this.count.add(n);
+		}
+
+		public long get() {
+			return this.count.sum();
+		}
+	}
+
+	// how often something has happened and how long it took altogether
+	public static final class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		private Timer() {}
+
+		// records one event which started at 'startNanos', as given by System.nanoTime
+		public void recordSince(long startNanos) {
+			this.record(System.nanoTime() - startNanos);
+		}
+
+		public void record(long elapsedNanos) {
+			this.count.increment();
+			this.nanos.add(elapsedNanos);
+		}
+
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		public long getNanos() {
+			return this.nanos.sum();
+		}
+	}
+
+	// shows every value of snapshot as a read only attribute
+	private static final class MetricsBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			var value = snapshot().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			var values = snapshot();
+			var list = new AttributeList();
+			for (var attribute : attributes) {
+				if (values.containsKey(attribute)) {
+					list.add(new Attribute(attribute, values.get(attribute)));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException(attribute.getName() + " is read only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			// the bean has no operations
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		// the attributes are worked out again every time they are asked for, as new metrics may have been made since
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			var names = snapshot().keySet();
+			var attributes = new MBeanAttributeInfo[names.size()];
+			var i = 0;
+			for (var name : names) {
+				attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+			}
+			return new MBeanInfo(MetricsBean.class.getName(), "Counters and timers of the drone's planning",
+					attributes, null, new MBeanOperationInfo[0], null);
+		}
+	}
+}
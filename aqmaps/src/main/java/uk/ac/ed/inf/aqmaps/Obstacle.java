@@ -4,13 +4,44 @@ import java.awt.geom.Point2D;
 
 import com.mapbox.geojson.Polygon;
 
-public class Obstacle {
-	private Polygon shape;
-	private Point2D centre;
+// an Obstacle never changes once created, so the same Obstacles can be shared between runs
+public final class Obstacle {
+	private final Polygon shape;
+	private final Point2D centre;
+	// the points of the outer ring of the shape, packed into arrays so collision checks do not go through Points.
+	// as in the Polygon, the last point is the same as the first
+	private final double[] lngs;
+	private final double[] lats;
+	// the bounding box of the outer ring
+	private final double minLng;
+	private final double maxLng;
+	private final double minLat;
+	private final double maxLat;
 	
 	public Obstacle(Polygon shape) {
 		this.shape = shape;
 		
+		// copy the outer ring into arrays and find its bounding box
+		var ring = shape.outer().coordinates();
+		this.lngs = new double[ring.size()];
+		this.lats = new double[ring.size()];
+		var minLng = Double.POSITIVE_INFINITY;
+		var maxLng = Double.NEGATIVE_INFINITY;
+		var minLat = Double.POSITIVE_INFINITY;
+		var maxLat = Double.NEGATIVE_INFINITY;
+		for (var i = 0; i < ring.size(); i++) {
+			this.lngs[i] = ring.get(i).longitude();
+			this.lats[i] = ring.get(i).latitude();
+			minLng = Math.min(minLng, this.lngs[i]);
+			maxLng = Math.max(maxLng, this.lngs[i]);
+			minLat = Math.min(minLat, this.lats[i]);
+			maxLat = Math.max(maxLat, this.lats[i]);
+		}
+		this.minLng = minLng;
+		this.maxLng = maxLng;
+		this.minLat = minLat;
+		this.maxLat = maxLat;
+		
 		// use the polygon to determine the centre of the obstacle
 		var lowestX = Double.POSITIVE_INFINITY;
 		var lowestY = Double.POSITIVE_INFINITY;
@@ -41,6 +72,38 @@ public class Obstacle {
 	}
 	
 	public Point2D getCentre() {
-		return this.centre;
+		// hand out a copy so that the centre cannot be changed by the caller
+		return (Point2D) this.centre.clone();
+	}
+	
+	// returns the number of points in the outer ring, including the last one which closes it
+	public int getPointCount() {
+		return this.lngs.length;
+	}
+	
+	// returns the longitude of the i-th point of the outer ring
+	public double getLng(int i) {
+		return this.lngs[i];
+	}
+	
+	// returns the latitude of the i-th point of the outer ring
+	public double getLat(int i) {
+		return this.lats[i];
+	}
+	
+	public double getMinLng() {
+		return this.minLng;
+	}
+	
+	public double getMaxLng() {
+		return this.maxLng;
+	}
+	
+	public double getMinLat() {
+		return this.minLat;
+	}
+	
+	public double getMaxLat() {
+		return this.maxLat;
 	}
 }
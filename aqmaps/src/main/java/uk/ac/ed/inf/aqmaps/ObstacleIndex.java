@@ -0,0 +1,169 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.List;
+
+// a uniform grid over the edges of a list of Obstacles, so that checking whether a move hits an Obstacle only has to
+// look at the edges close to the move rather than every edge of every Obstacle.
+// each edge is stored in every cell its bounding box overlaps. A move is checked against the edges in the cells its
+// own bounding box overlaps, so an edge it crosses is always found
+public final class ObstacleIndex {
+	// the width and height of a cell, the same as the length of one drone move
+	private static final double CELL_SIZE = 0.0003;
+	// the most cells the grid may have. Larger areas use bigger cells instead
+	private static final int MAX_CELLS = 1 << 20;
+	// how far each edge's bounding box is grown before being put in the grid, so edges which only just touch a move
+	// are still found despite rounding
+	private static final double MARGIN = 1e-9;
+
+	private final List<Obstacle> obstacles;
+	// for every edge, which Obstacle it belongs to and the coordinates of its two ends
+	private final int[] edgeObstacle;
+	private final double[] edgeLng1;
+	private final double[] edgeLat1;
+	private final double[] edgeLng2;
+	private final double[] edgeLat2;
+	// the corner of the grid with the lowest longitude and latitude, the size of each cell, and the number of cells
+	private final double originLng;
+	private final double originLat;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	// the edges in cell c are cellEdges[cellStart[c]] up to (not including) cellEdges[cellStart[c+1]]
+	private final int[] cellStart;
+	private final int[] cellEdges;
+
+	// CONSTRUCTOR //
+	public ObstacleIndex(List<Obstacle> obstacles) {
+		this.obstacles = obstacles;
+
+		// count the edges and find the area they cover
+		var edgeCount = 0;
+		var minLng = Double.POSITIVE_INFINITY;
+		var minLat = Double.POSITIVE_INFINITY;
+		var maxLng = Double.NEGATIVE_INFINITY;
+		var maxLat = Double.NEGATIVE_INFINITY;
+		for (var obstacle : obstacles) {
+			minLng = Math.min(minLng, obstacle.getMinLng());
+			minLat = Math.min(minLat, obstacle.getMinLat());
+			maxLng = Math.max(maxLng, obstacle.getMaxLng());
+			maxLat = Math.max(maxLat, obstacle.getMaxLat());
+			edgeCount += obstacle.getPointCount();
+		}
+		if (edgeCount == 0) {
+			minLng = minLat = maxLng = maxLat = 0;
+		}
+
+		// every point of a ring starts an edge, the last one joining back to the first
+		this.edgeObstacle = new int[edgeCount];
+		this.edgeLng1 = new double[edgeCount];
+		this.edgeLat1 = new double[edgeCount];
+		this.edgeLng2 = new double[edgeCount];
+		this.edgeLat2 = new double[edgeCount];
+		var e = 0;
+		for (var o = 0; o < obstacles.size(); o++) {
+			var obstacle = obstacles.get(o);
+			var points = obstacle.getPointCount();
+			for (var i = 0; i < points; i++) {
+				this.edgeObstacle[e] = o;
+				this.edgeLng1[e] = obstacle.getLng(i);
+				this.edgeLat1[e] = obstacle.getLat(i);
+				this.edgeLng2[e] = obstacle.getLng((i + 1) % points);
+				this.edgeLat2[e] = obstacle.getLat((i + 1) % points);
+				e++;
+			}
+		}
+
+		// grow the cells if the area is too big for the grid
+		var size = CELL_SIZE;
+		while (cellsNeeded(maxLng - minLng, size) * cellsNeeded(maxLat - minLat, size) > MAX_CELLS) {
+			size *= 2;
+		}
+		this.cellSize = size;
+		this.originLng = minLng - MARGIN;
+		this.originLat = minLat - MARGIN;
+		this.columns = (int) cellsNeeded(maxLng - minLng, size);
+		this.rows = (int) cellsNeeded(maxLat - minLat, size);
+
+		// count how many edges go in each cell, then fill the cells
+		var counts = new int[this.columns * this.rows + 1];
+		for (e = 0; e < edgeCount; e++) {
+			var bounds = this.cellBounds(e);
+			for (var row = bounds[2]; row <= bounds[3]; row++) {
+				for (var column = bounds[0]; column <= bounds[1]; column++) {
+					counts[row * this.columns + column + 1]++;
+				}
+			}
+		}
+		for (var c = 1; c < counts.length; c++) {
+			counts[c] += counts[c - 1];
+		}
+		this.cellStart = counts.clone();
+		this.cellEdges = new int[counts[counts.length - 1]];
+		for (e = 0; e < edgeCount; e++) {
+			var bounds = this.cellBounds(e);
+			for (var row = bounds[2]; row <= bounds[3]; row++) {
+				for (var column = bounds[0]; column <= bounds[1]; column++) {
+					this.cellEdges[counts[row * this.columns + column]++] = e;
+				}
+			}
+		}
+	}
+
+	// METHODS //
+	// returns the first Obstacle (in the order they were given) which the move from (lng1, lat1) to (lng2, lat2)
+	// crosses, or null if it does not cross any. Nothing is allocated, as this is called for every possible move
+	public Obstacle firstIntersecting(double lng1, double lat1, double lng2, double lat2) {
+		var bestObstacle = Integer.MAX_VALUE;
+
+		// the cells covered by the bounding box of the move, cut down to the grid
+		var firstColumn = Math.max(0, this.column(Math.min(lng1, lng2)));
+		var lastColumn = Math.min(this.columns - 1, this.column(Math.max(lng1, lng2)));
+		var firstRow = Math.max(0, this.row(Math.min(lat1, lat2)));
+		var lastRow = Math.min(this.rows - 1, this.row(Math.max(lat1, lat2)));
+
+		for (var row = firstRow; row <= lastRow; row++) {
+			for (var column = firstColumn; column <= lastColumn; column++) {
+				var cell = row * this.columns + column;
+				for (var n = this.cellStart[cell]; n < this.cellStart[cell + 1]; n++) {
+					var e = this.cellEdges[n];
+					// an edge may be in several cells, and only an earlier Obstacle than the one found so far matters
+					if (this.edgeObstacle[e] >= bestObstacle) {
+						continue;
+					}
+					if (PathFinder.linesIntersect(lng1, lat1, lng2, lat2,
+							this.edgeLng1[e], this.edgeLat1[e], this.edgeLng2[e], this.edgeLat2[e])) {
+						bestObstacle = this.edgeObstacle[e];
+					}
+				}
+			}
+		}
+		return bestObstacle == Integer.MAX_VALUE ? null : this.obstacles.get(bestObstacle);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// returns how many cells of the given size are needed to cover the given length, including the margins
+	private static long cellsNeeded(double length, double size) {
+		return (long) Math.floor((length + 2 * MARGIN) / size) + 1;
+	}
+
+	// returns the first and last column and row of the cells that the bounding box of edge e overlaps
+	private int[] cellBounds(int e) {
+		return new int[] {
+				Math.max(0, this.column(Math.min(this.edgeLng1[e], this.edgeLng2[e]) - MARGIN)),
+				Math.min(this.columns - 1, this.column(Math.max(this.edgeLng1[e], this.edgeLng2[e]) + MARGIN)),
+				Math.max(0, this.row(Math.min(this.edgeLat1[e], this.edgeLat2[e]) - MARGIN)),
+				Math.min(this.rows - 1, this.row(Math.max(this.edgeLat1[e], this.edgeLat2[e]) + MARGIN))
+		};
+	}
+
+	private int column(double lng) {
+		return (int) Math.floor((lng - this.originLng) / this.cellSize);
+	}
+
+	private int row(double lat) {
+		return (int) Math.floor((lat - this.originLat) / this.cellSize);
+	}
+}
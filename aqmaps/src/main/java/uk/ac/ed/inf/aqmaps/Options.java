@@ -0,0 +1,198 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// the optional flags which can be given to the program after the required arguments.
+// flags are either of the form --flag or --flag=value
+public class Options {
+	// whether the what3words cache should be used at all
+	private boolean useWordsCache = true;
+	// whether the what3words cache should be emptied before the run
+	private boolean clearWordsCache = false;
+	// where the what3words cache is stored
+	private Path wordsCacheFile = Paths.get("words-cache.bin");
+	// whether sensors should be ordered by the moves the drone needs between them rather than straight line distance
+	private boolean useFlightCost = false;
+	// the most rounds of Or-opt and 3-opt to run after 2-opt. 0 leaves the 2-opt route as it is
+	private int searchIterations = 0;
+	// the most time in milliseconds to spend ordering the sensors beyond the first 2-opt route. With --multi-start this
+	// is the time for all the routes. 0 sets no limit, so that the same seed always gives the same route
+	private long searchTimeMillis = 0;
+	// how many differently randomised routes to build and pick the best of. 1 builds only the usual route
+	private int starts = 1;
+	// how many threads to build the routes on
+	private int workers = Runtime.getRuntime().availableProcessors();
+	// whether the drone should plan its moves between sensors with A* rather than flying greedily towards each one
+	private boolean useAStar = false;
+	// where batch mode writes its files
+	private Path outputDir = Paths.get("");
+	// how many flights batch mode plans at the same time
+	private int parallelFlights = Runtime.getRuntime().availableProcessors();
+	// a copy of the web server's files to read the data from instead of the server. null reads from the server
+	private Path dataDir = null;
+	// whether flight paths are written in FlightPathEncoder's compact binary format rather than as text
+	private boolean binaryFlightPath = false;
+	// whether a JSON file of the run's Metrics is written alongside the other files
+	private boolean writeMetrics = false;
+
+	// METHODS //
+	// reads the flags in the given arguments, starting at index 'first'
+	public static Options parse(String[] args, int first) {
+		var options = new Options();
+
+		for (var i = first; i < args.length; i++) {
+			var arg = args[i];
+			// split the argument into the flag and its value, if it has one
+			var name = arg;
+			String value = null;
+			var equals = arg.indexOf('=');
+			if (equals >= 0) {
+				name = arg.substring(0, equals);
+				value = arg.substring(equals + 1);
+			}
+
+			switch (name) {
+			case "--no-words-cache":
+				options.useWordsCache = false;
+				break;
+			case "--clear-words-cache":
+				options.clearWordsCache = true;
+				break;
+			case "--words-cache":
+				options.wordsCacheFile = Paths.get(requireValue(name, value));
+				break;
+			case "--flight-cost":
+				options.useFlightCost = true;
+				break;
+			case "--search-iterations":
+				options.searchIterations = parseCount(name, requireValue(name, value));
+				break;
+			case "--search-time":
+				options.searchTimeMillis = parseCount(name, requireValue(name, value));
+				break;
+			case "--multi-start":
+				options.starts = Math.max(1, parseCount(name, requireValue(name, value)));
+				break;
+			case "--workers":
+				options.workers = Math.max(1, parseCount(name, requireValue(name, value)));
+				break;
+			case "--astar":
+				options.useAStar = true;
+				break;
+			case "--output-dir":
+				options.outputDir = Paths.get(requireValue(name, value));
+				break;
+			case "--parallel-flights":
+				options.parallelFlights = Math.max(1, parseCount(name, requireValue(name, value)));
+				break;
+			case "--data-dir":
+				options.dataDir = Paths.get(requireValue(name, value));
+				break;
+			case "--flight-path-format":
+				options.binaryFlightPath = parseFlightPathFormat(name, requireValue(name, value));
+				break;
+			case "--metrics":
+				options.writeMetrics = true;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		return options;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// makes sure that a flag which needs a value was given one
+	private static String requireValue(String name, String value) {
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Option " + name + " needs a value, e.g. " + name + "=<value>");
+		}
+		return value;
+	}
+
+	// reads the value of a flag which must be a whole number that is not negative
+	private static int parseCount(String name, String value) {
+		try {
+			var count = Integer.parseInt(value);
+			if (count >= 0) {
+				return count;
+			}
+		} catch (NumberFormatException e) {
+			// fall through to the error below
+		}
+		throw new IllegalArgumentException("Option " + name + " needs a whole number of at least 0, not " + value);
+	}
+
+	// reads the format to write flight paths in, returning whether it is the binary one
+	private static boolean parseFlightPathFormat(String name, String value) {
+		switch (value) {
+		case "text":
+			return false;
+		case "binary":
+			return true;
+		default:
+			throw new IllegalArgumentException("Option " + name + " needs to be text or binary, not " + value);
+		}
+	}
+
+	// GETTERS //
+	public boolean useWordsCache() {
+		return this.useWordsCache;
+	}
+
+	public boolean clearWordsCache() {
+		return this.clearWordsCache;
+	}
+
+	public Path getWordsCacheFile() {
+		return this.wordsCacheFile;
+	}
+
+	public boolean useFlightCost() {
+		return this.useFlightCost;
+	}
+
+	public int getSearchIterations() {
+		return this.searchIterations;
+	}
+
+	public long getSearchTimeMillis() {
+		return this.searchTimeMillis;
+	}
+
+	public int getStarts() {
+		return this.starts;
+	}
+
+	public int getWorkers() {
+		return this.workers;
+	}
+
+	public boolean useAStar() {
+		return this.useAStar;
+	}
+
+	public Path getOutputDir() {
+		return this.outputDir;
+	}
+
+	public int getParallelFlights() {
+		return this.parallelFlights;
+	}
+
+	public Path getDataDir() {
+		return this.dataDir;
+	}
+
+	public boolean binaryFlightPath() {
+		return this.binaryFlightPath;
+	}
+
+	public boolean writeMetrics() {
+		return this.writeMetrics;
+	}
+}
@@ -0,0 +1,240 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// writes the files of flights on a thread of its own, so that the threads planning them never wait on the disk.
+// flights are handed over through a bounded queue, which only makes a planning thread wait if the disk falls so far
+// behind that the queue fills up. The writer takes every flight waiting on the queue at once (up to BATCH_SIZE),
+// writes all of their files, then forces them all to the disk before closing them, so that one round of syncing
+// covers the whole batch rather than each file paying for its own. The future returned for each flight completes
+// once its files are safely on the disk, or with the reason they could not be written. If the writer stops for any
+// reason, the futures of every flight it has not written are completed with an IOException, so nothing waits forever
+public final class OutputWriter implements AutoCloseable {
+	// the most flights whose files are synced to the disk together
+	private static final int BATCH_SIZE = 16;
+	// put on the queue to stop the writer once everything before it has been written
+	private static final Job END = new Job(null, null, null, null, null);
+	// how long writing each flight's files takes, and how long each batch takes to sync
+	private static final Metrics.Timer writeTime = Metrics.timer("flight.write");
+	private static final Metrics.Timer syncTime = Metrics.timer("batch.sync");
+
+	private final BlockingQueue<Job> queue;
+	private final boolean binaryFlightPath;
+	private final FlightPathEncoder encoder = new FlightPathEncoder();
+	private final Thread thread;
+	// set once the writer has stopped, after which nothing more is written
+	private volatile boolean stopped = false;
+
+	// CONSTRUCTOR //
+	// starts a writer which holds at most 'capacity' flights waiting to be written, writing flight paths in the
+	// binary format if 'binaryFlightPath' is set
+	public OutputWriter(int capacity, boolean binaryFlightPath) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.binaryFlightPath = binaryFlightPath;
+		this.thread = new Thread(this::writeAll, "output-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	// METHODS //
+	// queues the readings and flight path files of the drone's flight on the given date to be written into the given
+	// directory, which is created if needed. The drone must not be flown any further
+	public CompletableFuture<Void> submit(Path directory, Drone drone, String day, String month, String year)
+			throws InterruptedException {
+		var job = new Job(directory, drone, day, month, year);
+		this.queue.put(job);
+		// the writer may have stopped just before the job went on the queue, in which case nothing else will fail it
+		if (this.stopped) {
+			this.failWaiting(new ArrayList<>());
+		}
+		return job.written;
+	}
+
+	// writes everything already queued, then stops the writer. If the thread closing it is interrupted, it still waits
+	// for the writer to finish and then sets its interrupt flag again
+	@Override
+	public void close() {
+		var interrupted = false;
+		var ended = false;
+		while (this.thread.isAlive()) {
+			try {
+				if (ended == false) {
+					// the writer may have died, leaving nothing to make room on the queue, so keep checking on it
+					ended = this.queue.offer(END, 100, TimeUnit.MILLISECONDS);
+				} else {
+					this.thread.join();
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// the loop run by the writer's thread
+	private void writeAll() {
+		var batch = new ArrayList<Job>(BATCH_SIZE);
+		try {
+			while (true) {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch, BATCH_SIZE - 1);
+				var end = batch.remove(END);
+				this.write(batch);
+				batch.clear();
+				if (end) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.stopped = true;
+			// fail the flights being written when the writer stopped, and those still waiting
+			this.failWaiting(batch);
+		}
+	}
+
+	// takes every job off the queue and fails the given jobs and those taken which have not already been completed
+	private void failWaiting(List<Job> jobs) {
+		this.queue.drainTo(jobs);
+		for (var job : jobs) {
+			if (job != END && job.written.isDone() == false) {
+				job.fail(new IOException("The output writer stopped before the files were written"));
+			}
+		}
+	}
+
+	// writes the files of every job in the batch, syncs them all and then completes their futures
+	private void write(List<Job> batch) {
+		var written = new ArrayList<Job>(batch.size());
+		for (var job : batch) {
+			var startTime = System.nanoTime();
+			try {
+				this.open(job);
+				writeTime.recordSince(startTime);
+				written.add(job);
+			} catch (IOException | RuntimeException e) {
+				job.fail(e);
+			}
+		}
+		var syncStart = System.nanoTime();
+		for (var job : written) {
+			try {
+				for (var channel : job.channels) {
+					channel.force(false);
+				}
+				job.close();
+				job.written.complete(null);
+			} catch (IOException | RuntimeException e) {
+				job.fail(e);
+			}
+		}
+		if (written.isEmpty() == false) {
+			syncTime.recordSince(syncStart);
+		}
+	}
+
+	// creates the files of the job and writes everything into them, leaving them open to be synced
+	private void open(Job job) throws IOException {
+		Files.createDirectories(job.directory);
+		var readings = FlightPathEncoder.open(IO.readingsFile(job.directory, job.day, job.month, job.year));
+		job.channels.add(readings);
+		try (var out = new ReadingsWriter(new BufferedWriter(Channels.newWriter(new Unclosable(readings),
+				StandardCharsets.UTF_8)))) {
+			for (var feature : job.drone.getFeatureList()) {
+				out.writeFeature(feature);
+			}
+			out.writePath(job.drone.getPoints());
+		}
+
+		var flightPath = FlightPathEncoder.open(IO.flightPathFile(job.directory, job.day, job.month, job.year,
+				this.binaryFlightPath));
+		job.channels.add(flightPath);
+		if (this.binaryFlightPath) {
+			this.encoder.writeBinary(flightPath, job.drone.getFlightPath());
+		} else {
+			this.encoder.writeText(flightPath, job.drone.getFlightPath());
+		}
+	}
+
+	// the files of one flight waiting to be written
+	private static final class Job {
+		private final Path directory;
+		private final Drone drone;
+		private final String day;
+		private final String month;
+		private final String year;
+		// the files of the flight which have been opened and not yet closed
+		private final List<FileChannel> channels = new ArrayList<>(2);
+		private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+		private Job(Path directory, Drone drone, String day, String month, String year) {
+			this.directory = directory;
+			this.drone = drone;
+			this.day = day;
+			this.month = month;
+			this.year = year;
+		}
+
+		private void close() throws IOException {
+			for (var channel : this.channels) {
+				channel.close();
+			}
+			this.channels.clear();
+		}
+
+		// closes whatever files are open and completes the future with why they could not be written
+		private void fail(Exception e) {
+			try {
+				this.close();
+			} catch (IOException closing) {
+				e.addSuppressed(closing);
+			}
+			this.written.completeExceptionally(e);
+		}
+	}
+
+	// passes writes through to a channel, but leaves it open when closed, so that a writer on top of it can be closed
+	// (and flushed) while the file is still to be synced
+	private static final class Unclosable implements WritableByteChannel {
+		private final WritableByteChannel channel;
+
+		private Unclosable(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return this.channel.write(src);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.channel.isOpen();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// runs the flights of a batch through a series of stages, each on threads of its own, joined by bounded queues:
+//   resolve (wait for the date's sensors, then look up where they are) -> order (find the route from each start
+//   position) -> simulate (fly the route, then hand the flight to an OutputWriter to write its files)
+// each date's sensors are read in the background by the Fetcher from the moment it goes into the pipeline, so later
+// dates are read while earlier ones are planned, and files are written while later flights are flown.
+// how fast flights come out is limited by the slowest stage, and the queues stop the others from running far ahead
+// of it. A flight which fails in any stage skips the rest of them, a date which cannot be read fails all of its
+// flights, and a flight whose files cannot be written fails too
+final class Pipeline {
+	// put on a queue to say that nothing more will come along it
+	private static final Flight END = new Flight(-1, null, null, null);
+
+	private final DataSource source;
+	private final PlanningContext context;
+	private final Options options;
+	private final long seed;
+	private final List<Point2D> starts;
+	// the directory to write the files of the flights from each start position to
+	private final List<Path> directories;
+
+	// CONSTRUCTOR //
+	Pipeline(DataSource source, PlanningContext context, Options options, long seed, List<Point2D> starts, List<Path> directories) {
+		this.source = source;
+		this.context = context;
+		this.options = options;
+		this.seed = seed;
+		this.starts = starts;
+		this.directories = directories;
+	}
+
+	// METHODS //
+	// flies from every start position on every date, returning how each flight went in date then start position order
+	List<Batch.Summary> run(List<LocalDate> dates) throws InterruptedException {
+		var capacity = 2 * this.options.getParallelFlights();
+		BlockingQueue<Flight> toResolve = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Flight> toOrder = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Flight> toSimulate = new ArrayBlockingQueue<>(capacity);
+		// the last queue is never full, so the stages can always finish while the flights are collected from it
+		BlockingQueue<Flight> done = new LinkedBlockingQueue<>();
+
+		try (var writer = new OutputWriter(capacity, this.options.binaryFlightPath())) {
+			// looking up where the sensors are takes a request for each sensor, so that stage gets a thread for every
+			// place on the queue after it, which keeps the planning threads busy even when the server is slow
+			stage("resolve", capacity, toResolve, toOrder, this::resolve);
+			stage("order", this.options.getParallelFlights(), toOrder, toSimulate, this::order);
+			stage("simulate", this.options.getParallelFlights(), toSimulate, done, flight -> this.simulate(writer, flight));
+			return this.collect(dates, toResolve, done);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// puts the dates into the pipeline, starting to read their sensors, and waits for how every flight went, including
+	// the writing of its files
+	private List<Batch.Summary> collect(List<LocalDate> dates, BlockingQueue<Flight> toResolve, BlockingQueue<Flight> done)
+			throws InterruptedException {
+		// the dates go in while the flights of earlier ones are coming out at the other end, which is fine as the
+		// last queue never blocks the stages. As the queue is bounded, only so many dates are read ahead
+		for (var d = 0; d < dates.size(); d++) {
+			var date = new Flight(d, dates.get(d), null, null);
+			date.sensorsRead = Fetcher.get().fetch(() -> this.source.readSensors(date.day(), date.month(), date.year()));
+			toResolve.put(date);
+		}
+		toResolve.put(END);
+
+		var summaries = new Batch.Summary[dates.size() * this.starts.size()];
+		for (var flight = done.take(); flight != END; flight = done.take()) {
+			if (flight.start == null) {
+				// a date which could not be read, so none of its flights could be planned
+				for (var s = 0; s < this.starts.size(); s++) {
+					summaries[flight.index * this.starts.size() + s] = failed(flight.date, this.starts.get(s), flight.error);
+				}
+			} else if (flight.error != null) {
+				summaries[flight.index] = failed(flight.date, flight.start, flight.error);
+			} else {
+				try {
+					flight.written.join();
+					summaries[flight.index] = new Batch.Summary(Batch.label(flight.date, flight.start),
+							150 - flight.drone.getMovesLeft(), flight.status, null);
+				} catch (CompletionException e) {
+					summaries[flight.index] = failed(flight.date, flight.start, e);
+				}
+			}
+		}
+		// a flight can only be missing if a stage's thread died while handing it on
+		for (var i = 0; i < summaries.length; i++) {
+			if (summaries[i] == null) {
+				summaries[i] = failed(dates.get(i / this.starts.size()), this.starts.get(i % this.starts.size()),
+						new IllegalStateException("The flight was lost by the pipeline"));
+			}
+		}
+		return List.of(summaries);
+	}
+
+	// waits for the sensors of a date to be read, looks up where they are, then splits the date into a flight from each
+	// start position
+	private List<Flight> resolve(Flight date) {
+		date.sensors = Fetcher.join(date.sensorsRead);
+		var locations = new ArrayList<String>();
+		for (var sensor : date.sensors) {
+			locations.add(sensor.getLocation());
+		}
+		var coordinates = this.source.readCoordinates(locations);
+		for (var i = 0; i < date.sensors.size(); i++) {
+			date.sensors.get(i).setCoordinates(coordinates.get(i));
+		}
+
+		var flights = new ArrayList<Flight>();
+		for (var s = 0; s < this.starts.size(); s++) {
+			var flight = new Flight(date.index * this.starts.size() + s, date.date, this.starts.get(s), this.directories.get(s));
+			flight.sensors = date.sensors;
+			flights.add(flight);
+		}
+		return flights;
+	}
+
+	// finds the order to visit the sensors in
+	private List<Flight> order(Flight flight) {
+		flight.flightPlan = App.orderSensors(this.options, this.seed, this.context, flight.start, flight.sensors);
+		return List.of(flight);
+	}
+
+	// flies the route, then queues the flight's files to be written
+	private List<Flight> simulate(OutputWriter writer, Flight flight) {
+		flight.drone = new Drone(this.context, flight.start);
+		App.usePlanner(this.options, this.context, flight.drone);
+		flight.status = flight.drone.flyRoute(flight.flightPlan, flight.start);
+		try {
+			flight.written = writer.submit(flight.directory, flight.drone, flight.day(), flight.month(), flight.year());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing the files to be written", e);
+		}
+		// nothing more is needed than the drone
+		flight.sensors = null;
+		flight.flightPlan = null;
+		return List.of(flight);
+	}
+
+	// starts 'workers' threads which take flights from 'in', do the stage's work on them and put what comes of it on
+	// 'out'. Once every worker has seen the end of 'in', or stopped for any other reason, the end is put on 'out', so
+	// the stages after it always finish. The time spent on each flight is recorded by the timer flight.<name>
+	private static void stage(String name, int workers, BlockingQueue<Flight> in, BlockingQueue<Flight> out,
+			Function<Flight, List<Flight>> work) {
+		var running = new AtomicInteger(workers);
+		var timer = Metrics.timer("flight." + name);
+		for (var w = 0; w < workers; w++) {
+			var thread = new Thread(() -> {
+				try {
+					for (var flight = in.take(); flight != END; flight = in.take()) {
+						var startTime = System.nanoTime();
+						var results = apply(work, flight);
+						timer.recordSince(startTime);
+						for (var result : results) {
+							out.put(result);
+						}
+					}
+					// put the end back so that the other workers of the stage see it too
+					in.put(END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					if (running.decrementAndGet() == 0) {
+						putUninterruptibly(out, END);
+					}
+				}
+			}, "pipeline-" + name + "-" + w);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	// does the work of a stage on the flight, recording on it why it failed if it does. Anything thrown fails the
+	// flight rather than the worker, so that the stage keeps going. Flights which have already failed are passed on as
+	// they are
+	private static List<Flight> apply(Function<Flight, List<Flight>> work, Flight flight) {
+		if (flight.error != null) {
+			return List.of(flight);
+		}
+		try {
+			return work.apply(flight);
+		} catch (Throwable e) {
+			flight.error = e;
+			return List.of(flight);
+		}
+	}
+
+	// puts the flight on the queue even if the thread is interrupted while waiting for room, keeping the interrupt
+	private static void putUninterruptibly(BlockingQueue<Flight> queue, Flight flight) {
+		var interrupted = false;
+		while (true) {
+			try {
+				queue.put(flight);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Batch.Summary failed(LocalDate date, Point2D start, Throwable error) {
+		return new Batch.Summary(Batch.label(date, start), 0, FlightStatus.FAILED, Batch.describe(error));
+	}
+
+	// one flight as it moves through the stages, which fill it in as they go. Until the resolve stage it stands for
+	// a whole date and has no start position
+	private static final class Flight {
+		// where the flight's summary goes, or for a whole date the index of its date
+		private final int index;
+		private final LocalDate date;
+		private final Point2D start;
+		private final Path directory;
+		// the reading of a date's sensors, started as it goes into the pipeline
+		private CompletableFuture<List<Sensor>> sensorsRead;
+		private List<Sensor> sensors;
+		private List<Sensor> flightPlan;
+		private Drone drone;
+		private FlightStatus status;
+		// completes once the flight's files are on the disk
+		private CompletableFuture<Void> written;
+		private Throwable error;
+
+		private Flight(int index, LocalDate date, Point2D start, Path directory) {
+			this.index = index;
+			this.date = date;
+			this.start = start;
+			this.directory = directory;
+		}
+
+		// the parts of the date as they are written on the web server and in the names of the files
+		private String day() {
+			return String.format("%02d", this.date.getDayOfMonth());
+		}
+
+		private String month() {
+			return String.format("%02d", this.date.getMonthValue());
+		}
+
+		private String year() {
+			return String.valueOf(this.date.getYear());
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.List;
+
+import com.mapbox.geojson.LineString;
+
+// everything a flight is planned against: the no-fly-zones, the spatial index of their edges, and the planners which
+// remember results about them. A context never changes after it is made, so one can be shared by any number of
+// flights planned at the same time on different threads. The confinement area is the same for every flight and is
+// checked with PathFinder.isOutofBounds
+public final class PlanningContext {
+	private static final Metrics.Counter illegalMoveChecks = Metrics.counter("checkIllegalMove.calls");
+
+	private final List<Obstacle> noFlyZones;
+	// the edges of noFlyZones arranged in a grid, so that a move is only checked against the edges near it
+	private final ObstacleIndex noFlyZoneIndex;
+	// made the first time they are needed, as most runs only use one or neither
+	private FlightCostModel flightCostModel;
+	private FlightPlanner flightPlanner;
+
+	// CONSTRUCTOR //
+	public PlanningContext(List<Obstacle> noFlyZones) {
+		this.noFlyZones = List.copyOf(noFlyZones);
+		this.noFlyZoneIndex = new ObstacleIndex(this.noFlyZones);
+	}
+
+	// METHODS //
+	// checks to see if the given LineString intersects with any of the Obstacles in noFlyZones
+	// if so, returns the Obstacle it intersects with
+	public Obstacle checkIllegalMove(LineString move) {
+		var m1 = move.coordinates().get(0);
+		var m2 = move.coordinates().get(1);
+		return this.checkIllegalMove(m1.longitude(), m1.latitude(), m2.longitude(), m2.latitude());
+	}
+
+	// checks to see if the move from (fromLng, fromLat) to (toLng, toLat) intersects with any of the Obstacles in
+	// noFlyZones. If so, returns the Obstacle it intersects with
+	public Obstacle checkIllegalMove(double fromLng, double fromLat, double toLng, double toLat) {
+		illegalMoveChecks.increment();
+		return this.findIllegalMove(fromLng, fromLat, toLng, toLat);
+	}
+
+	// the same as checkIllegalMove, but leaves counting the check to the caller. The drone and the planner check many
+	// moves, so they count them themselves and add them with countIllegalMoveChecks once they are done
+	Obstacle findIllegalMove(double fromLng, double fromLat, double toLng, double toLat) {
+		// only the edges of the obstacles near the move are checked, using the spatial index of noFlyZones
+		return this.noFlyZoneIndex.firstIntersecting(fromLng, fromLat, toLng, toLat);
+	}
+
+	// adds checks made with findIllegalMove to the metrics
+	void countIllegalMoveChecks(long checks) {
+		if (checks > 0) {
+			illegalMoveChecks.add(checks);
+		}
+	}
+
+	// returns the model of how many moves the drone needs between points in this context
+	public synchronized FlightCostModel getFlightCostModel() {
+		if (this.flightCostModel == null) {
+			this.flightCostModel = new FlightCostModel(this);
+		}
+		return this.flightCostModel;
+	}
+
+	// returns the A* planner for flights in this context
+	public synchronized FlightPlanner getFlightPlanner() {
+		if (this.flightPlanner == null) {
+			this.flightPlanner = new FlightPlanner(this);
+		}
+		return this.flightPlanner;
+	}
+
+	// GETTERS //
+	public List<Obstacle> getNoFlyZones() {
+		return this.noFlyZones;
+	}
+}
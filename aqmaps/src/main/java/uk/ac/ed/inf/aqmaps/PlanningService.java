@@ -0,0 +1,206 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// a resident service which plans flights on request, so that the data read, the planning context and the compiled
+// code stay warm from one flight to the next rather than being set up again by a new JVM every time.
+// it only listens on the loopback address and answers
+//   GET /plan?date=<dd-mm-yyyy>&start=<lat,lng>[&seed=<n>]
+// with a JSON object holding the moves taken, how the flight went, how long it took to plan in milliseconds, the
+// readings as GeoJSON and the flight path as the text of a flight path file. Every flight is planned with the flags
+// the service was started with. A bad request gets 400 and data which cannot be read gets 502, both with an error
+// message. Start it with App --serve <service port> <data port> [flags]
+public final class PlanningService implements AutoCloseable {
+	// each thread writes flight paths with its own encoder, so that its buffers are reused from one request to the next
+	private static final ThreadLocal<FlightPathEncoder> encoders = ThreadLocal.withInitial(FlightPathEncoder::new);
+
+	private final DataSource source;
+	private final Options options;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	// CONSTRUCTOR //
+	private PlanningService(DataSource source, Options options, int port) throws IOException {
+		this.source = source;
+		this.options = options;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.createContext("/plan", this::handle);
+		// plan as many flights at once as batch mode would
+		this.executor = Executors.newFixedThreadPool(options.getParallelFlights(), r -> {
+			var thread = new Thread(r, "planning-service");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(this.executor);
+	}
+
+	// METHODS //
+	// starts the service on the given port (0 picks a free one), reading the data from 'source'. The buildings are
+	// read straight away, so that a problem with the data shows up before the first request
+	public static PlanningService start(DataSource source, Options options, int port) throws IOException {
+		App.planningContext(source.readBuildings());
+		var service = new PlanningService(source, options, port);
+		service.server.start();
+		return service;
+	}
+
+	// runs the service until the process is stopped, given the arguments <service port> <data port> followed by any
+	// flags. The data is read from the web server at the data port, or with --data-dir from disk
+	public static void run(String[] args) {
+		if (args.length < 2) {
+			throw new IllegalArgumentException("Service mode needs <service port> <data port>");
+		}
+		var options = Options.parse(args, 2);
+		try {
+			var service = start(App.dataSource(options, args[1]), options, Integer.parseInt(args[0]));
+			System.out.println("Planning flights on port " + service.getPort());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// returns the port the service is listening on
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	// stops the service straight away
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// answers one request to plan a flight
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (exchange.getRequestMethod().equals("GET") == false) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body;
+			var status = 200;
+			try {
+				body = this.plan(parseQuery(exchange.getRequestURI().getRawQuery()));
+			} catch (IllegalArgumentException e) {
+				status = 400;
+				body = error(e);
+			} catch (DataSourceException e) {
+				status = 502;
+				body = error(e);
+			} catch (RuntimeException e) {
+				status = 500;
+				body = error(e);
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, body.length);
+			try (var out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// plans the flight asked for by the parameters of a request and returns the response to send
+	private byte[] plan(Map<String, String> parameters) throws IOException {
+		var dateParameter = require(parameters, "date");
+		var date = Batch.parseDate(dateParameter);
+		var start = Batch.parseStart(require(parameters, "start"));
+		var seed = App.parseSeed(parameters.getOrDefault("seed", ""));
+		var day = String.format("%02d", date.getDayOfMonth());
+		var month = String.format("%02d", date.getMonthValue());
+		var year = String.valueOf(date.getYear());
+
+		var startTime = System.nanoTime();
+		// the buildings are read every time so that changes on the server are picked up, in the background while the
+		// sensors are read. While they have not changed, the source hands back the same list and the same planning
+		// context is used
+		var buildingsRead = Fetcher.get().fetch(this.source::readBuildings);
+		var sensors = this.source.readLocatedSensors(day, month, year);
+		var context = App.planningContext(Fetcher.join(buildingsRead));
+		var drone = new Drone(context, start);
+		App.usePlanner(this.options, context, drone);
+		var flightPlan = App.orderSensors(this.options, seed, context, start, sensors);
+		var flightStatus = drone.flyRoute(flightPlan, start);
+		var millis = (System.nanoTime() - startTime) / 1_000_000;
+
+		var readings = new StringWriter();
+		try (var out = new ReadingsWriter(readings)) {
+			for (var feature : drone.getFeatureList()) {
+				out.writeFeature(feature);
+			}
+			out.writePath(drone.getPoints());
+		}
+		var flightPath = new ByteArrayOutputStream();
+		encoders.get().writeText(Channels.newChannel(flightPath), drone.getFlightPath());
+
+		var response = new ByteArrayOutputStream();
+		try (var json = new JsonWriter(new OutputStreamWriter(response, StandardCharsets.UTF_8))) {
+			json.beginObject();
+			json.name("date").value(dateParameter);
+			json.name("start").value(start.getX() + "," + start.getY());
+			json.name("moves").value(150 - drone.getMovesLeft());
+			json.name("status").value(flightStatus.toString());
+			json.name("planMillis").value(millis);
+			json.name("readings").jsonValue(readings.toString());
+			json.name("flightPath").value(flightPath.toString(StandardCharsets.UTF_8));
+			json.endObject();
+		}
+		return response.toByteArray();
+	}
+
+	// reads the parameters of a query string such as date=05-01-2020&start=55.9444,-3.1878
+	private static Map<String, String> parseQuery(String query) {
+		var parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (var pair : query.split("&")) {
+			var equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return parameters;
+	}
+
+	private static String require(Map<String, String> parameters, String name) {
+		var value = parameters.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("The request needs a " + name + " parameter");
+		}
+		return value;
+	}
+
+	// returns the response for a request which could not be planned
+	private static byte[] error(Exception e) throws IOException {
+		var response = new StringWriter();
+		try (var json = new JsonWriter(response)) {
+			json.beginObject().name("error").value(e.getMessage()).endObject();
+		}
+		return response.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
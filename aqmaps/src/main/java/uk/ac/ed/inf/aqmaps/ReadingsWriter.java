@@ -0,0 +1,125 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+// writes a readings file one feature at a time, straight to a buffered file channel, rather than building the
+// whole FeatureCollection and its JSON string in memory first.
+// the output is the same as FeatureCollection.toJson(): coordinates are rounded to 7 decimal places like mapbox
+// does, and strings are escaped the same way gson does
+public final class ReadingsWriter implements Closeable {
+	private static final Gson gson = new Gson();
+
+	private final JsonWriter out;
+
+	// CONSTRUCTOR //
+	// creates the file, replacing it if it exists, and starts the FeatureCollection
+	public ReadingsWriter(Path file) throws IOException {
+		this(new BufferedWriter(Channels.newWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8)));
+	}
+
+	// starts the FeatureCollection on the given writer, which is closed along with this. If the FeatureCollection
+	// cannot be started the writer is closed before the exception is thrown, so that its file is not left open
+	public ReadingsWriter(Writer writer) throws IOException {
+		try {
+			this.out = new JsonWriter(writer);
+			// mapbox serialises with gson's defaults, which escape characters such as < and = in strings
+			this.out.setHtmlSafe(true);
+			this.out.beginObject();
+			this.out.name("type").value("FeatureCollection");
+			this.out.name("features").beginArray();
+		} catch (IOException | RuntimeException e) {
+			try {
+				writer.close();
+			} catch (IOException closing) {
+				e.addSuppressed(closing);
+			}
+			throw e;
+		}
+	}
+
+	// METHODS //
+	// writes one feature of the collection. Points are written directly and other geometries and bounding boxes are
+	// left to mapbox
+	public void writeFeature(Feature feature) throws IOException {
+		this.out.beginObject();
+		this.out.name("type").value("Feature");
+		if (feature.bbox() != null) {
+			this.out.name("bbox").jsonValue(feature.bbox().toJson());
+		}
+		if (feature.id() != null) {
+			this.out.name("id").value(feature.id());
+		}
+		if (feature.geometry() instanceof Point) {
+			this.out.name("geometry").beginObject();
+			this.out.name("type").value("Point");
+			this.out.name("coordinates");
+			this.writeCoordinates((Point) feature.geometry());
+			this.out.endObject();
+		} else if (feature.geometry() != null) {
+			this.out.name("geometry").jsonValue(feature.geometry().toJson());
+		}
+		// a FeatureCollection always writes the properties, even when there are none
+		this.out.name("properties");
+		if (feature.properties() == null) {
+			this.out.beginObject().endObject();
+		} else {
+			gson.toJson(feature.properties(), this.out);
+		}
+		this.out.endObject();
+	}
+
+	// writes the feature holding the LineString the drone flew along, which has no properties
+	public void writePath(List<Point> points) throws IOException {
+		this.out.beginObject();
+		this.out.name("type").value("Feature");
+		this.out.name("geometry").beginObject();
+		this.out.name("type").value("LineString");
+		this.out.name("coordinates").beginArray();
+		for (var point : points) {
+			this.writeCoordinates(point);
+		}
+		this.out.endArray();
+		this.out.endObject();
+		this.out.name("properties").beginObject().endObject();
+		this.out.endObject();
+	}
+
+	// ends the FeatureCollection and closes the file
+	@Override
+	public void close() throws IOException {
+		try {
+			this.out.endArray();
+			this.out.endObject();
+		} finally {
+			this.out.close();
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// writes the point as [lng,lat], rounded as mapbox rounds them
+	private void writeCoordinates(Point point) throws IOException {
+		this.out.beginArray();
+		this.out.value(GeoJsonUtils.trim(point.longitude()));
+		this.out.value(GeoJsonUtils.trim(point.latitude()));
+		this.out.endArray();
+	}
+}
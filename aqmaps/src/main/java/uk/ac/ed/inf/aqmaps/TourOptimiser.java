@@ -0,0 +1,415 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+// the route ordering algorithms, working on a DistanceMatrix.
+// a tour is an int array holding the matrix indices of the sensors in the order they are visited. The start position
+// (index 0) is not part of the array but is always visited first and last
+// make this class final to emulate a static class
+public final class TourOptimiser {
+	// the smallest change in route length treated as an improvement. Anything smaller is rounding error
+	private static final double IMPROVEMENT_TOLERANCE = 1e-12;
+	// the longest run of sensors Or-opt will try to move elsewhere in the tour
+	private static final int OR_OPT_MAX_SEGMENT = 3;
+	// how many of each point's closest points 3-opt tries joining it to
+	private static final int NEIGHBOUR_LIST_SIZE = 8;
+	// how many of the closest sensors a randomised nearestNeighbor start may pick from, and the chance of picking each
+	private static final double[] RANDOMISED_CHOICE = {0.7, 0.2, 0.1};
+	// the deadline used when no time limit is set, which is never passed
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+	// how many passes 2-opt has made over tours and how many swaps it has kept
+	private static final Metrics.Counter twoOptPasses = Metrics.counter("twoOpt.passes");
+	private static final Metrics.Counter twoOptImprovements = Metrics.counter("twoOpt.improvements");
+	// the threads multiStart runs its starts on, shared by every flight so that flights planned at the same time do not
+	// each bring their own 'workers' threads. Made the first time it is needed
+	private static ForkJoinPool pool;
+
+	// do not allow this class to be instantiated
+	private TourOptimiser() {}
+
+	// use the greedy/nearestNeighbor algorithm to build a tour, always flying to the closest sensor not yet visited
+	public static int[] nearestNeighbor(DistanceMatrix d) {
+		var tour = new int[d.size() - 1];
+		var visited = new boolean[d.size()];
+		var current = 0;
+
+		for (var n = 0; n < tour.length; n++) {
+			// find the closest sensor which has not been visited yet. Ties go to the sensor which came first
+			var closest = -1;
+			var closestDistance = Double.MAX_VALUE;
+			for (var j = 1; j < d.size(); j++) {
+				if (visited[j] == false && d.get(current, j) < closestDistance) {
+					closest = j;
+					closestDistance = d.get(current, j);
+				}
+			}
+			visited[closest] = true;
+			tour[n] = closest;
+			current = closest;
+		}
+		return tour;
+	}
+
+	// use the 2-opt algorithm to improve the given tour in place.
+	// the first sensor of the tour is never moved
+	public static void twoOpt(DistanceMatrix d, int[] tour) {
+		var iLimit = tour.length - 2;
+		var kLimit = tour.length - 1;
+
+		Boolean improvementMade;
+		// counted here and added to the metrics once 2-opt has finished, so the inner loop only touches locals
+		var passes = 0;
+		var improvements = 0;
+
+		// repeat until no improvements are made
+		while (true) {
+			improvementMade = false;
+			passes++;
+
+			for (var i = 1; i < iLimit; i++) {
+				for (var k = i + 1; k < kLimit; k++) {
+					// reversing the nodes between i and k only replaces the edges (i-1, i) and (k, k+1)
+					// with (i-1, k) and (i, k+1), so only those four edges are needed to find the change in route length
+					var a = tour[i - 1];
+					var b = tour[i];
+					var c = tour[k];
+					var e = tour[k + 1];
+					var change = (d.get(a, c) + d.get(b, e)) - (d.get(a, b) + d.get(c, e));
+
+					// if swapping the nodes improved the route length then keep the swap
+					if (change < -IMPROVEMENT_TOLERANCE) {
+						reverse(tour, i, k);
+						improvementMade = true;
+						improvements++;
+					}
+				}
+			}
+			if (improvementMade == false) {
+				twoOptPasses.add(passes);
+				twoOptImprovements.add(improvements);
+				return;
+			}
+		}
+	}
+
+	// improves the given tour in place by repeatedly applying Or-opt, 3-opt and 2-opt until none of them can find an
+	// improvement or 'maxIterations' rounds have been done. It never stops on time, so the same tour always comes out
+	// the same however busy the machine is
+	public static void localSearch(DistanceMatrix d, int[] tour, int maxIterations) {
+		localSearch(d, tour, maxIterations, 0);
+	}
+
+	// as above, but also stops after the round in which 'timeLimitMillis' runs out. 0 sets no time limit. Once the
+	// limit is reached the tour depends on how fast the machine is, not only on the tour it was given
+	public static void localSearch(DistanceMatrix d, int[] tour, int maxIterations, long timeLimitMillis) {
+		localSearchUntil(d, tour, maxIterations, deadline(timeLimitMillis));
+	}
+
+	// builds and improves 'starts' tours at the same time on 'workers' threads and returns the shortest. The threads are
+	// shared with every other call, so however many flights are planned at once only 'workers' starts run at a time.
+	// the first start is the plain nearestNeighbor tour and the rest pick randomly between the closest few sensors,
+	// each using its own Random made from 'seed', so the same seed always gives the same tour. If 'timeLimitMillis' is
+	// not 0 it bounds all the starts together: starts which have not begun once it has passed are skipped and the rest
+	// cut their local search short, so once the limit is reached the tour depends on how fast the machine is
+	public static int[] multiStart(DistanceMatrix d, int starts, long seed, int workers, int maxIterations,
+			long timeLimitMillis) {
+		var deadline = deadline(timeLimitMillis);
+		List<Callable<int[]>> tasks = new ArrayList<>();
+		for (var start = 0; start < starts; start++) {
+			final var startNumber = start;
+			tasks.add(() -> {
+				// the first start always runs so that there is a tour to return
+				if (startNumber > 0 && passed(deadline)) {
+					return null;
+				}
+				int[] tour;
+				if (startNumber == 0) {
+					tour = nearestNeighbor(d);
+				} else {
+					tour = randomisedNearestNeighbor(d, new Random(seed * 1_000_003 + startNumber));
+				}
+				twoOpt(d, tour);
+				localSearchUntil(d, tour, maxIterations, deadline);
+				return tour;
+			});
+		}
+		
+		try {
+			int[] bestTour = null;
+			var bestLength = Double.POSITIVE_INFINITY;
+			// go through the results in start order so that ties always go to the same tour
+			for (var result : pool(workers).invokeAll(tasks)) {
+				var tour = result.get();
+				if (tour != null && tourLength(d, tour) < bestLength - IMPROVEMENT_TOLERANCE) {
+					bestTour = tour;
+					bestLength = tourLength(d, tour);
+				}
+			}
+			return bestTour;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while ordering the sensors", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to order the sensors", e.getCause());
+		}
+	}
+
+	// returns the length of the given tour, including the flights from and back to the start position
+	public static double tourLength(DistanceMatrix d, int[] tour) {
+		if (tour.length == 0) {
+			return 0;
+		}
+		var length = d.get(0, tour[0]);
+		for (var n = 0; n < tour.length - 1; n++) {
+			length += d.get(tour[n], tour[n + 1]);
+		}
+		return length + d.get(tour[tour.length - 1], 0);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// returns the shared pool, making a new one if there is none yet or it has a different number of threads. An old
+	// pool is left for any call still using it, and its threads end on their own once they have been idle for a while
+	private static synchronized ForkJoinPool pool(int workers) {
+		if (pool == null || pool.getParallelism() != workers) {
+			pool = new ForkJoinPool(workers);
+		}
+		return pool;
+	}
+
+	// does the work of localSearch, stopping after the round in which 'deadline' passes
+	private static void localSearchUntil(DistanceMatrix d, int[] tour, int maxIterations, long deadline) {
+		if (maxIterations == 0) {
+			return;
+		}
+		var neighbours = neighbourLists(d, NEIGHBOUR_LIST_SIZE);
+		// Or-opt and 3-opt treat the start position as part of the tour, so they work on a copy which includes it
+		var route = new int[tour.length + 1];
+		System.arraycopy(tour, 0, route, 1, tour.length);
+
+		for (var iteration = 0; iteration < maxIterations && passed(deadline) == false; iteration++) {
+			var improvementMade = orOpt(d, route);
+			improvementMade |= threeOpt(d, route, neighbours);
+			if (improvementMade == false) {
+				break;
+			}
+			// let 2-opt tidy up anything the other moves have opened up
+			System.arraycopy(route, 1, tour, 0, tour.length);
+			twoOpt(d, tour);
+			System.arraycopy(tour, 0, route, 1, tour.length);
+		}
+		System.arraycopy(route, 1, tour, 0, tour.length);
+	}
+
+	// returns the System.nanoTime() at which 'timeLimitMillis' from now runs out, or NO_DEADLINE if it is 0
+	private static long deadline(long timeLimitMillis) {
+		if (timeLimitMillis == 0) {
+			return NO_DEADLINE;
+		}
+		return System.nanoTime() + timeLimitMillis * 1_000_000;
+	}
+
+	// returns whether the given deadline has passed
+	private static boolean passed(long deadline) {
+		return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+	}
+
+	// reverses the order of every node in the given tour between indices i and k in place
+	private static void reverse(int[] tour, int i, int k) {
+		while (i < k) {
+			var temp = tour[i];
+			tour[i] = tour[k];
+			tour[k] = temp;
+			i++;
+			k--;
+		}
+	}
+
+	// like nearestNeighbor, but at each step picks at random between the few closest sensors not yet visited
+	private static int[] randomisedNearestNeighbor(DistanceMatrix d, Random random) {
+		var tour = new int[d.size() - 1];
+		var visited = new boolean[d.size()];
+		var closest = new int[RANDOMISED_CHOICE.length];
+		var current = 0;
+
+		for (var n = 0; n < tour.length; n++) {
+			// find the closest few sensors which have not been visited, closest first
+			var found = 0;
+			for (var j = 1; j < d.size(); j++) {
+				if (visited[j]) {
+					continue;
+				}
+				// insert j into the list of closest sensors, dropping the furthest if the list is full
+				var p = Math.min(found, closest.length - 1);
+				if (found == closest.length && d.get(current, j) >= d.get(current, closest[p])) {
+					continue;
+				}
+				while (p > 0 && d.get(current, j) < d.get(current, closest[p - 1])) {
+					closest[p] = closest[p - 1];
+					p--;
+				}
+				closest[p] = j;
+				found = Math.min(found + 1, closest.length);
+			}
+
+			// pick one of them using the chances in RANDOMISED_CHOICE
+			var roll = random.nextDouble();
+			var choice = 0;
+			while (choice < found - 1 && roll >= RANDOMISED_CHOICE[choice]) {
+				roll -= RANDOMISED_CHOICE[choice];
+				choice++;
+			}
+			current = closest[choice];
+			visited[current] = true;
+			tour[n] = current;
+		}
+		return tour;
+	}
+
+	// use the Or-opt algorithm to improve the given route in place, where route[0] is the start position.
+	// tries moving every run of 1 to 3 sensors to between two other points, either way round.
+	// returns whether any improvement was made
+	private static boolean orOpt(DistanceMatrix d, int[] route) {
+		var size = route.length;
+		var improvementMade = false;
+
+		for (var length = 1; length <= OR_OPT_MAX_SEGMENT && length < size - 1; length++) {
+			// the segment runs from position i to i+length-1, never including the start position
+			for (var i = 1; i + length <= size; i++) {
+				var prev = route[i - 1];
+				var first = route[i];
+				var last = route[i + length - 1];
+				var next = route[(i + length) % size];
+				// how much shorter the route gets by taking the segment out and joining its neighbours
+				var removed = d.get(prev, first) + d.get(last, next) - d.get(prev, next);
+
+				// try putting the segment between positions j and j+1
+				for (var j = 0; j < size; j++) {
+					// skip the edges touching the segment, as they will not exist once it is taken out
+					if (j >= i - 1 && j < i + length) {
+						continue;
+					}
+					var a = route[j];
+					var b = route[(j + 1) % size];
+					var forwards = d.get(a, first) + d.get(last, b) - d.get(a, b);
+					var backwards = d.get(a, last) + d.get(first, b) - d.get(a, b);
+
+					if (Math.min(forwards, backwards) - removed < -IMPROVEMENT_TOLERANCE) {
+						moveSegment(route, i, length, j, backwards < forwards);
+						improvementMade = true;
+						break;
+					}
+				}
+			}
+		}
+		return improvementMade;
+	}
+
+	// use the 3-opt algorithm to improve the given route in place, where route[0] is the start position.
+	// removes the edges (a,b), (c,e) and (f,g) and swaps the two runs of sensors b..c and e..f, giving the edges
+	// (a,e), (f,b) and (c,g). Only tries joining a to its closest points, so e is taken from the neighbour list of a.
+	// returns whether any improvement was made
+	private static boolean threeOpt(DistanceMatrix d, int[] route, int[][] neighbours) {
+		var size = route.length;
+		var improvementMade = false;
+		// where each point is in the route
+		var position = new int[size];
+		for (var p = 0; p < size; p++) {
+			position[route[p]] = p;
+		}
+
+		for (var i = 0; i < size - 2; i++) {
+			var a = route[i];
+			var b = route[i + 1];
+			for (var e : neighbours[a]) {
+				// the first run of sensors ends just before e
+				var j = position[e] - 1;
+				if (j <= i || j >= size - 1) {
+					continue;
+				}
+				var c = route[j];
+				// the new edge (a,e) has to be shorter than (a,b) for the move to be worth checking
+				if (d.get(a, e) >= d.get(a, b)) {
+					break;
+				}
+				// the second run of sensors is e..f
+				for (var k = j + 1; k < size; k++) {
+					var f = route[k];
+					var g = route[(k + 1) % size];
+					var change = (d.get(a, e) + d.get(f, b) + d.get(c, g)) - (d.get(a, b) + d.get(c, e) + d.get(f, g));
+					if (change < -IMPROVEMENT_TOLERANCE) {
+						swapSegments(route, i + 1, j, k);
+						for (var p = 0; p < size; p++) {
+							position[route[p]] = p;
+						}
+						improvementMade = true;
+						break;
+					}
+				}
+				// once the route after a has changed, move on to the next point
+				if (route[i + 1] != b) {
+					break;
+				}
+			}
+		}
+		return improvementMade;
+	}
+
+	// returns, for every point, the indices of its 'k' closest other points, closest first
+	private static int[][] neighbourLists(DistanceMatrix d, int k) {
+		var size = d.size();
+		var count = Math.min(k, size - 1);
+		var neighbours = new int[size][];
+		for (var i = 0; i < size; i++) {
+			var candidates = new Integer[size - 1];
+			var n = 0;
+			for (var j = 0; j < size; j++) {
+				if (j != i) {
+					candidates[n++] = j;
+				}
+			}
+			final var from = i;
+			Arrays.sort(candidates, (x, y) -> Double.compare(d.get(from, x), d.get(from, y)));
+			neighbours[i] = new int[count];
+			for (var c = 0; c < count; c++) {
+				neighbours[i][c] = candidates[c];
+			}
+		}
+		return neighbours;
+	}
+
+	// moves the run of 'length' points starting at position i of the route to between positions j and j+1,
+	// reversing it if asked to
+	private static void moveSegment(int[] route, int i, int length, int j, boolean reversed) {
+		var segment = new int[length];
+		for (var n = 0; n < length; n++) {
+			segment[n] = reversed ? route[i + length - 1 - n] : route[i + n];
+		}
+		// the rest of the route with the segment taken out
+		var rest = new int[route.length - length];
+		System.arraycopy(route, 0, rest, 0, i);
+		System.arraycopy(route, i + length, rest, i, route.length - i - length);
+		// where position j has ended up in the rest of the route, which moves back if it came after the segment
+		var insertAfter = j < i ? j : j - length;
+
+		System.arraycopy(rest, 0, route, 0, insertAfter + 1);
+		System.arraycopy(segment, 0, route, insertAfter + 1, length);
+		System.arraycopy(rest, insertAfter + 1, route, insertAfter + 1 + length, rest.length - insertAfter - 1);
+	}
+
+	// swaps the run of points from position i to j with the run from j+1 to k, keeping each in its own order
+	private static void swapSegments(int[] route, int i, int j, int k) {
+		// reversing each run and then the whole section puts the runs the other way round, each the right way round
+		reverse(route, i, j);
+		reverse(route, j + 1, k);
+		reverse(route, i, k);
+	}
+}
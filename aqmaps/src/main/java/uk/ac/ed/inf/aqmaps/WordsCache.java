@@ -0,0 +1,221 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// a persistent cache of what3words locations and their coordinates.
+// the cache file is append-only: a header followed by one record per location, each record being the words
+// (modified UTF-8) followed by the latitude and longitude as doubles. It is read once when opened and new
+// locations are appended to the end as they are resolved.
+// several processes may share the same file, so it is locked while a record is appended. Whatever other processes
+// have appended since the file was last looked at is read in first, so the file is only ever cut short (to drop a
+// record left half written by a process which stopped part way through) or given its header while it is locked.
+public class WordsCache {
+	// the header written at the start of every cache file, used to make sure the file is actually a cache
+	private static final int MAGIC = 0x57335743;
+	private static final int VERSION = 1;
+	// the number of bytes the header takes up
+	private static final int HEADER_LENGTH = 8;
+
+	// every cache that has been opened in this process, so that repeated runs share the same one
+	private static final Map<Path, WordsCache> openCaches = new ConcurrentHashMap<>();
+
+	private final Path file;
+	private final Map<String, Point2D> coordinates;
+	// the number of bytes at the start of the file which hold complete records, as far as this process knows
+	private long validLength;
+	private FileChannel channel;
+	// set to false if the file could not be written to, after which the cache is only held in memory
+	private boolean persistent = true;
+
+	private WordsCache(Path file, Map<String, Point2D> coordinates, long validLength) {
+		this.file = file;
+		this.coordinates = coordinates;
+		this.validLength = validLength;
+	}
+
+	// METHODS //
+	// returns the cache stored at the given path, loading it from disk the first time it is asked for
+	public static WordsCache open(Path file) {
+		return openCaches.computeIfAbsent(file.toAbsolutePath(), WordsCache::load);
+	}
+
+	// deletes the cache stored at the given path, both on disk and in memory
+	public static void clear(Path file) {
+		var cache = openCaches.remove(file.toAbsolutePath());
+		if (cache != null) {
+			cache.close();
+		}
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			System.out.println("Warning: Unable to delete the words cache at " + file + ".");
+		}
+	}
+
+	// returns the cached coordinates of the given what3words, or null if they have not been cached
+	public synchronized Point2D get(String words) {
+		var coords = this.coordinates.get(words);
+		// hand out a copy so that the cached coordinates cannot be changed by the caller
+		return coords == null ? null : (Point2D) coords.clone();
+	}
+
+	// adds the given what3words and their coordinates to the cache, appending them to the cache file
+	public synchronized void put(String words, Point2D coords) {
+		if (this.coordinates.putIfAbsent(words, (Point2D) coords.clone()) != null) {
+			return;
+		}
+		if (this.persistent == false) {
+			return;
+		}
+		try {
+			if (this.channel == null) {
+				this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+			}
+			var record = new ByteArrayOutputStream();
+			var out = new DataOutputStream(record);
+			out.writeUTF(words);
+			out.writeDouble(coords.getX());
+			out.writeDouble(coords.getY());
+			this.append(record.toByteArray());
+		} catch (IOException e) {
+			// the cache is only an optimisation, so carry on with it held in memory only
+			System.out.println("Warning: Unable to write to the words cache at " + this.file + ".");
+			this.persistent = false;
+			this.close();
+		}
+	}
+
+	public synchronized int size() {
+		return this.coordinates.size();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// reads every record in the given cache file. A missing file gives an empty cache
+	private static WordsCache load(Path file) {
+		Map<String, Point2D> coordinates = new HashMap<>();
+		long validLength = 0;
+		if (Files.exists(file)) {
+			try {
+				var bytes = Files.readAllBytes(file);
+				var in = new DataInputStream(new ByteArrayInputStream(bytes));
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					// the file is started again the first time a record is appended
+					System.out.println("Warning: Ignoring the words cache at " + file + " as it is not in a known format.");
+				} else {
+					validLength = HEADER_LENGTH + readRecords(in, coordinates);
+				}
+			} catch (EOFException e) {
+				// too short to hold a header, so it is started again the first time a record is appended
+			} catch (IOException e) {
+				System.out.println("Warning: Unable to read the words cache at " + file + ".");
+			}
+		}
+		return new WordsCache(file, coordinates, validLength);
+	}
+
+	// reads records until the end of the input, adding them to 'coordinates' unless they are already there. Returns
+	// the number of bytes taken up by complete records. A record cut short at the end is not counted
+	private static long readRecords(DataInputStream in, Map<String, Point2D> coordinates) throws IOException {
+		var start = in.available();
+		var complete = 0L;
+		try {
+			// keep reading records until the end of the input
+			while (true) {
+				var words = in.readUTF();
+				var lat = in.readDouble();
+				var lng = in.readDouble();
+				coordinates.putIfAbsent(words, new Point2D.Double(lat, lng));
+				complete = start - in.available();
+			}
+		} catch (EOFException e) {
+			// reached the end of the input
+		}
+		return complete;
+	}
+
+	// appends the record to the end of the cache file while holding a lock on it
+	private void append(byte[] record) throws IOException {
+		var lock = this.channel.lock();
+		try {
+			var end = this.catchUp();
+			this.write(ByteBuffer.wrap(record), end);
+			this.validLength = end + record.length;
+		} finally {
+			lock.release();
+		}
+	}
+
+	// brings this cache up to date with the file, which must be locked, and returns where the next record goes.
+	// records appended by other processes are read in, anything after the last complete record is cut off, and a file
+	// which is empty or not a cache is started again with just the header
+	private long catchUp() throws IOException {
+		var size = this.channel.size();
+		if (size < this.validLength) {
+			// the file has been cut short by something else, so check it all again
+			this.validLength = 0;
+		}
+		if (this.validLength == 0) {
+			var header = ByteBuffer.allocate(HEADER_LENGTH);
+			while (header.hasRemaining() && this.channel.read(header, header.position()) >= 0) {
+				// keep reading until the whole header is in the buffer
+			}
+			header.flip();
+			if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				this.channel.truncate(0);
+				this.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).flip(), 0);
+				this.validLength = HEADER_LENGTH;
+				return this.validLength;
+			}
+			this.validLength = HEADER_LENGTH;
+		}
+		if (size > this.validLength) {
+			var appended = ByteBuffer.allocate((int) (size - this.validLength));
+			while (appended.hasRemaining()
+					&& this.channel.read(appended, this.validLength + appended.position()) >= 0) {
+				// keep reading until everything appended is in the buffer
+			}
+			var in = new DataInputStream(new ByteArrayInputStream(appended.array(), 0, appended.position()));
+			this.validLength += readRecords(in, this.coordinates);
+			if (size > this.validLength) {
+				this.channel.truncate(this.validLength);
+			}
+		}
+		return this.validLength;
+	}
+
+	// writes all of the buffer to the cache file at the given position
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += this.channel.write(buffer, position);
+		}
+	}
+
+	private synchronized void close() {
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				// nothing more can be done with the file at this point
+			}
+			this.channel = null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// checks that the text written by FlightPathEncoder is byte for byte what the original writer made with string
+// concatenation and Files.write, and that flight paths written in the binary format read back exactly as they were
+public class FlightPathEncoderTest {
+	// words as the sensors hold them, with some which are not ASCII and one long enough to need more than one buffer
+	private static final String[] WORDS = {"slips.mass.baking", "acid.chair.butter", "café.naïve.déjà",
+			"日本.語.です", "x".repeat(40000)};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(150);
+
+	@Test
+	public void textMatchesOldWriter() throws IOException {
+		// enough moves to fill the encoder's buffer several times over
+		var flightPath = randomFlightPath(2000);
+		flightPath.add(move(-0.0, 0.0, 0, 1e-5, -1e-300, null));
+		flightPath.add(move(Double.NaN, Double.POSITIVE_INFINITY, 350, 1e7, 123456789.0, WORDS[WORDS.length - 1]));
+		flightPath.add(move(Double.MIN_VALUE, Double.MAX_VALUE, 10, -1e-4, 0.001, ""));
+
+		var file = this.folder.getRoot().toPath().resolve("flightpath.txt");
+		new FlightPathEncoder().writeText(file, flightPath);
+
+		assertArrayEquals(oldWriter(flightPath), Files.readAllBytes(file));
+	}
+
+	@Test
+	public void textMatchesOldWriterForEmptyPath() throws IOException {
+		var file = this.folder.getRoot().toPath().resolve("flightpath.txt");
+		new FlightPathEncoder().writeText(file, new ArrayList<>());
+		assertArrayEquals(oldWriter(new ArrayList<>()), Files.readAllBytes(file));
+	}
+
+	@Test
+	public void binaryRoundTrips() throws IOException {
+		var flightPath = randomFlightPath(2000);
+		flightPath.add(move(-0.0, 0.0, 0, 0.0, -0.0, null));
+		flightPath.add(move(Double.NaN, 1.5, 350, Double.NEGATIVE_INFINITY, Double.NaN, ""));
+		var encoder = new FlightPathEncoder();
+
+		// the same encoder writes several files in turn
+		for (var run = 0; run < 3; run++) {
+			var file = this.folder.getRoot().toPath().resolve("flightpath-" + run + ".bin");
+			encoder.writeBinary(file, flightPath.subList(0, flightPath.size() - run));
+			assertSameMoves(flightPath.subList(0, flightPath.size() - run), FlightPathEncoder.readBinary(file));
+		}
+	}
+
+	@Test
+	public void readBinaryRejectsCorruptFiles() throws IOException {
+		var file = this.folder.getRoot().toPath().resolve("flightpath.bin");
+		new FlightPathEncoder().writeBinary(file, randomFlightPath(20));
+		var bytes = Files.readAllBytes(file);
+
+		// not a flight path file at all
+		expectIOException(write("junk.bin", new byte[] {1, 2, 3}));
+		// a negative count and a count larger than the file could hold
+		expectIOException(write("negative.bin", withCount(bytes, -1)));
+		expectIOException(write("huge.bin", withCount(bytes, Integer.MAX_VALUE)));
+		// a file which stops part way through a move
+		expectIOException(write("truncated.bin", Arrays.copyOf(bytes, bytes.length - 5)));
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// the bytes the original writer made: a line for each move made by string concatenation, written by Files.write
+	private byte[] oldWriter(List<Move> flightPath) throws IOException {
+		List<String> lines = new ArrayList<>();
+		int l = 1;
+		for (var move : flightPath) {
+			var line = l + ","
+						+ move.getBeforeLng() + ","
+						+ move.getBeforeLat() + ","
+						+ move.getDirection() + ","
+						+ move.getAfterLng() + ","
+						+ move.getAfterLat() + ","
+						+ move.getWords();
+			lines.add(line);
+			l++;
+		}
+		var file = this.folder.newFile().toPath();
+		Files.write(file, lines);
+		return Files.readAllBytes(file);
+	}
+
+	// moves like the drone makes, where the after coordinates are the before ones the other way around, mixed with
+	// moves which are not
+	private List<Move> randomFlightPath(int moves) {
+		var flightPath = new ArrayList<Move>();
+		for (var m = 0; m < moves; m++) {
+			var lng = -3.192473 + this.random.nextDouble() * 0.008154;
+			var lat = 55.942617 + this.random.nextDouble() * 0.003616;
+			var words = this.random.nextInt(4) == 0 ? WORDS[this.random.nextInt(WORDS.length - 1)] : null;
+			if (this.random.nextBoolean()) {
+				flightPath.add(move(lng, lat, 10 * this.random.nextInt(36), lat, lng, words));
+			} else {
+				flightPath.add(move(lng, lat, 10 * this.random.nextInt(36), lng + 0.0003, lat - 0.0003, words));
+			}
+		}
+		return flightPath;
+	}
+
+	private static Move move(double beforeLng, double beforeLat, int direction, double afterLng, double afterLat,
+			String words) {
+		var move = new Move(beforeLng, beforeLat, direction, afterLng, afterLat);
+		move.setWords(words);
+		return move;
+	}
+
+	private static void assertSameMoves(List<Move> expected, List<Move> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (var i = 0; i < expected.size(); i++) {
+			var e = expected.get(i);
+			var a = actual.get(i);
+			var message = "move " + i;
+			assertEquals(message, Double.doubleToRawLongBits(e.getBeforeLng()), Double.doubleToRawLongBits(a.getBeforeLng()));
+			assertEquals(message, Double.doubleToRawLongBits(e.getBeforeLat()), Double.doubleToRawLongBits(a.getBeforeLat()));
+			assertEquals(message, e.getDirection(), a.getDirection());
+			assertEquals(message, Double.doubleToRawLongBits(e.getAfterLng()), Double.doubleToRawLongBits(a.getAfterLng()));
+			assertEquals(message, Double.doubleToRawLongBits(e.getAfterLat()), Double.doubleToRawLongBits(a.getAfterLat()));
+			assertEquals(message, e.getWords(), a.getWords());
+		}
+	}
+
+	// the file with the number of moves in its header replaced
+	private static byte[] withCount(byte[] bytes, int count) {
+		var copy = bytes.clone();
+		ByteBuffer.wrap(copy).putInt(8, count);
+		return copy;
+	}
+
+	private Path write(String name, byte[] bytes) throws IOException {
+		var file = this.folder.getRoot().toPath().resolve(name);
+		Files.write(file, bytes);
+		return file;
+	}
+
+	private static void expectIOException(Path file) {
+		try {
+			FlightPathEncoder.readBinary(file);
+			fail(file + " should not have been read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// a stand-in for the web server the program reads its data from, serving the /maps, /buildings and /words files
+// from a local directory laid out the same way. It only listens on the loopback address.
+// to make runs repeatable on one machine, every response can be held back by a fixed latency, and the number of
+// requests handled at once can be limited (the rest wait their turn). Like the real server, it answers conditional
+// requests for files which have not changed with 304 Not Modified.
+// it is only test tooling, so it lives with the tests and is not part of the application jar. To run it by itself,
+// use the test classpath, e.g. mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=uk.ac.ed.inf.aqmaps.LocalServer
+public final class LocalServer implements AutoCloseable {
+	// the trees of files that are served
+	private static final String[] CONTEXTS = {"/maps", "/buildings", "/words"};
+
+	private final Path root;
+	private final long latencyMillis;
+	// limits how many requests are handled at once
+	private final Semaphore slots;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	// CONSTRUCTOR //
+	private LocalServer(Path root, int port, long latencyMillis, int maxConcurrent) throws IOException {
+		this.root = root.toAbsolutePath().normalize();
+		this.latencyMillis = latencyMillis;
+		this.slots = new Semaphore(maxConcurrent, true);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		for (var context : CONTEXTS) {
+			this.server.createContext(context, this::handle);
+		}
+		this.executor = Executors.newCachedThreadPool(r -> {
+			var thread = new Thread(r, "local-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(this.executor);
+	}
+
+	// METHODS //
+	// starts serving the files under 'root' on the given port (0 picks a free one). Each response is delayed by
+	// 'latencyMillis' and at most 'maxConcurrent' requests are handled at the same time
+	public static LocalServer start(Path root, int port, long latencyMillis, int maxConcurrent) throws IOException {
+		if (Files.isDirectory(root) == false) {
+			throw new IllegalArgumentException("Given data directory " + root + " does not exist");
+		}
+		var server = new LocalServer(root, port, latencyMillis, Math.max(1, maxConcurrent));
+		server.server.start();
+		return server;
+	}
+
+	// runs the server until the process is stopped, given the arguments <data directory> <port> followed by the
+	// optional flags --latency=<ms> and --max-concurrent=<n>
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			throw new IllegalArgumentException("The local server needs <data directory> <port>");
+		}
+		var latency = 0L;
+		var maxConcurrent = Integer.MAX_VALUE;
+		for (var i = 2; i < args.length; i++) {
+			if (args[i].startsWith("--latency=")) {
+				latency = Long.parseLong(args[i].substring("--latency=".length()));
+			} else if (args[i].startsWith("--max-concurrent=")) {
+				maxConcurrent = Integer.parseInt(args[i].substring("--max-concurrent=".length()));
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		var server = start(Paths.get(args[0]), Integer.parseInt(args[1]), latency, maxConcurrent);
+		System.out.println("Serving " + server.root + " on port " + server.getPort());
+	}
+
+	// returns the port the server is listening on
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	// stops the server straight away
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// answers one request with the file at its path under the root directory
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			this.slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exchange.close();
+			return;
+		}
+		try {
+			if (this.latencyMillis > 0) {
+				Thread.sleep(this.latencyMillis);
+			}
+			this.respond(exchange);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.slots.release();
+			exchange.close();
+		}
+	}
+
+	// sends the requested file, 304 if the client already has it, or an error status
+	private void respond(HttpExchange exchange) throws IOException {
+		if (exchange.getRequestMethod().equals("GET") == false) {
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		// make sure the path cannot reach outside the root directory
+		var file = this.root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+		if (file.startsWith(this.root) == false || Files.isRegularFile(file) == false) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+
+		// the file counts as changed whenever its size or modification time changes
+		var modified = Files.getLastModifiedTime(file).toInstant();
+		var etag = "\"" + Long.toHexString(Files.size(file)) + "-" + Long.toHexString(modified.toEpochMilli()) + "\"";
+		var headers = exchange.getResponseHeaders();
+		headers.set("ETag", etag);
+		headers.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(modified.atOffset(ZoneOffset.UTC)));
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		var body = Files.readAllBytes(file);
+		headers.set("Content-Type", file.toString().endsWith("json") ? "application/json" : "application/octet-stream");
+		// a length of 0 would tell the server to send the body in chunks, -1 means there is no body
+		exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+		try (var out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+// checks that the grid of ObstacleIndex finds the same Obstacle as checking the move against every edge of every
+// Obstacle in order, including for moves which start, end or run along the lines between cells, and moves which end
+// exactly on an edge
+public class ObstacleIndexTest {
+	// the grid's cell size and the margin it leaves around the Obstacles, as set in ObstacleIndex
+	private static final double CELL_SIZE = 0.0003;
+	private static final double MARGIN = 1e-9;
+	// the length of one drone move
+	private static final double MOVE = 0.0003;
+
+	private final Random random = new Random(55944);
+
+	@Test
+	public void randomMovesMatchBruteForce() {
+		var obstacles = randomObstacles(15);
+		var index = new ObstacleIndex(obstacles);
+		for (var m = 0; m < 50000; m++) {
+			var lng = -3.1930 + this.random.nextDouble() * 0.0092;
+			var lat = 55.9421 + this.random.nextDouble() * 0.0046;
+			var angle = Math.toRadians(10 * this.random.nextInt(36));
+			check(index, obstacles, lng, lat, lng + MOVE * Math.cos(angle), lat + MOVE * Math.sin(angle));
+		}
+	}
+
+	@Test
+	public void movesOnCellBoundariesMatchBruteForce() {
+		var obstacles = randomObstacles(15);
+		var index = new ObstacleIndex(obstacles);
+		var originLng = Double.POSITIVE_INFINITY;
+		var originLat = Double.POSITIVE_INFINITY;
+		for (var obstacle : obstacles) {
+			originLng = Math.min(originLng, obstacle.getMinLng());
+			originLat = Math.min(originLat, obstacle.getMinLat());
+		}
+		originLng -= MARGIN;
+		originLat -= MARGIN;
+
+		for (var line = 0; line < 35; line++) {
+			var lng = originLng + line * CELL_SIZE;
+			var lat = originLat + line * CELL_SIZE;
+			for (var step = 0; step < 40; step++) {
+				var along = step * CELL_SIZE / 2;
+				// along a line between columns and along a line between rows
+				check(index, obstacles, lng, originLat + along, lng, originLat + along + MOVE);
+				check(index, obstacles, originLng + along, lat, originLng + along + MOVE, lat);
+				// starting and ending on the lines, from either side
+				for (var direction = 0; direction < 36; direction++) {
+					var angle = Math.toRadians(10 * direction);
+					var dLng = MOVE * Math.cos(angle);
+					var dLat = MOVE * Math.sin(angle);
+					check(index, obstacles, lng, originLat + along, lng + dLng, originLat + along + dLat);
+					check(index, obstacles, lng - dLng, originLat + along - dLat, lng, originLat + along);
+					check(index, obstacles, originLng + along, lat, originLng + along + dLng, lat + dLat);
+					check(index, obstacles, originLng + along - dLng, lat - dLat, originLng + along, lat);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void movesEndingOnEdgesMatchBruteForce() {
+		var obstacles = randomObstacles(15);
+		// rectangles too, whose edges lie along the lines between cells
+		obstacles.add(rectangle(-3.1890, 55.9440, 4 * CELL_SIZE, 3 * CELL_SIZE));
+		obstacles.add(rectangle(-3.1870, 55.9430, CELL_SIZE, CELL_SIZE));
+		var index = new ObstacleIndex(obstacles);
+		for (var obstacle : obstacles) {
+			for (var i = 0; i + 1 < obstacle.getPointCount(); i++) {
+				for (var t : new double[] {0, 0.25, 0.5, 1}) {
+					var lng = obstacle.getLng(i) + t * (obstacle.getLng(i + 1) - obstacle.getLng(i));
+					var lat = obstacle.getLat(i) + t * (obstacle.getLat(i + 1) - obstacle.getLat(i));
+					for (var direction = 0; direction < 36; direction++) {
+						var angle = Math.toRadians(10 * direction);
+						var dLng = MOVE * Math.cos(angle);
+						var dLat = MOVE * Math.sin(angle);
+						// ending on the edge, and starting on it
+						check(index, obstacles, lng - dLng, lat - dLat, lng, lat);
+						check(index, obstacles, lng, lat, lng + dLng, lat + dLat);
+					}
+				}
+				// running along the edge itself
+				check(index, obstacles, obstacle.getLng(i), obstacle.getLat(i), obstacle.getLng(i + 1), obstacle.getLat(i + 1));
+			}
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static void check(ObstacleIndex index, List<Obstacle> obstacles, double lng1, double lat1, double lng2,
+			double lat2) {
+		assertSame("move from " + lng1 + "," + lat1 + " to " + lng2 + "," + lat2,
+				bruteForce(obstacles, lng1, lat1, lng2, lat2), index.firstIntersecting(lng1, lat1, lng2, lat2));
+	}
+
+	// checks the move against every edge of every Obstacle, returning the first Obstacle it crosses
+	private static Obstacle bruteForce(List<Obstacle> obstacles, double lng1, double lat1, double lng2, double lat2) {
+		for (var obstacle : obstacles) {
+			var points = obstacle.getPointCount();
+			for (var i = 0; i < points; i++) {
+				if (PathFinder.linesIntersect(lng1, lat1, lng2, lat2, obstacle.getLng(i), obstacle.getLat(i),
+						obstacle.getLng((i + 1) % points), obstacle.getLat((i + 1) % points))) {
+					return obstacle;
+				}
+			}
+		}
+		return null;
+	}
+
+	// polygons of 3 to 8 points around random centres, some of them overlapping
+	private List<Obstacle> randomObstacles(int count) {
+		var obstacles = new ArrayList<Obstacle>();
+		for (var o = 0; o < count; o++) {
+			var centreLng = -3.1920 + this.random.nextDouble() * 0.0070;
+			var centreLat = 55.9428 + this.random.nextDouble() * 0.0030;
+			var points = 3 + this.random.nextInt(6);
+			var ring = new ArrayList<Point>();
+			for (var p = 0; p < points; p++) {
+				var angle = 2 * Math.PI * p / points;
+				var radius = 0.0001 + this.random.nextDouble() * 0.0006;
+				ring.add(Point.fromLngLat(centreLng + radius * Math.cos(angle), centreLat + radius * Math.sin(angle)));
+			}
+			ring.add(ring.get(0));
+			obstacles.add(new Obstacle(Polygon.fromLngLats(List.of(ring))));
+		}
+		return obstacles;
+	}
+
+	private static Obstacle rectangle(double lng, double lat, double width, double height) {
+		var ring = List.of(Point.fromLngLat(lng, lat), Point.fromLngLat(lng + width, lat),
+				Point.fromLngLat(lng + width, lat + height), Point.fromLngLat(lng, lat + height),
+				Point.fromLngLat(lng, lat));
+		return new Obstacle(Polygon.fromLngLats(List.of(ring)));
+	}
+}
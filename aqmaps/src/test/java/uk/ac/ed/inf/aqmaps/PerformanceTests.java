@@ -2,93 +2,146 @@ package uk.ac.ed.inf.aqmaps;
 
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
+import com.google.gson.GsonBuilder;
+
+// flies every day of 2020 and 2021 from each of 5 start positions and reports how many moves the drone took.
+// the flights are run at the same time on as many threads as there are cores (or -Daqmaps.test.threads), and share
+// the buildings read by the first of them. A JSON report is written to target/performance-report.json (or
+// -Daqmaps.test.report) so that runs of different builds can be compared.
+// with -Daqmaps.test.data=<dir> the data is served from a copy of the web server's files by a LocalServer started
+// for the test, instead of the server on -Daqmaps.test.port. The what3words cache is not used, so that every run
+// reads the same data and leaves nothing behind for the next one
 public class PerformanceTests {
+	private static final String[] START_NAMES = {"Centre", "Top Left", "Top Right", "Bottom Left", "Bottom Right"};
+	private static final String[][] START_POSITIONS = {
+			{"55.9444", "-3.1878"},
+			{"55.946232", "-3.192472"},
+			{"55.946232", "-3.184320"},
+			{"55.942618", "-3.192472"},
+			{"55.942618", "-3.184320"}
+	};
+
 	@Test
-	public void testPerformance() throws IOException, InterruptedException {
-		var averageMoves = 0.0;
-		var timesFailed = 0;
-		var bestPerformance = 150;
-		var worstPerformance = 0;
-		var testsDone = 0;
-		
+	public void testPerformance() throws IOException, InterruptedException, ExecutionException {
+		var threads = Integer.getInteger("aqmaps.test.threads", Runtime.getRuntime().availableProcessors());
+		var port = System.getProperty("aqmaps.test.port", "80");
+		var reportFile = Paths.get(System.getProperty("aqmaps.test.report", "target/performance-report.json"));
+		var data = System.getProperty("aqmaps.test.data");
+		LocalServer server = null;
+		if (data != null) {
+			server = LocalServer.start(Paths.get(data), 0, 0, Integer.MAX_VALUE);
+			port = String.valueOf(server.getPort());
+		}
+		var serverPort = port;
+
 		long startTime = System.currentTimeMillis();
 
-		for (var year = 2020; year < 2022; year++) {
-			for (var month = 1; month < 13; month++) {
-				var daysInMonth = LocalDate.of(year, month, 1).lengthOfMonth();
-				for (var day = 1; day < daysInMonth + 1; day++) {
-					
-					var d = String.valueOf(day);
-					var m = String.valueOf(month);
-					var y = String.valueOf(year);
-					
-					System.out.println(d + " : " + m + " : " + y);
-					
-					for (var startPos = 0; startPos < 5; startPos++) {
-						
-						var startLat = "";
-						var startLng = "";
-						var pos = "";
-						
-						if (startPos == 0) {
-							startLat = "55.9444";
-							startLng = "-3.1878";
-							pos = "Centre";
-						} else if (startPos == 1) {
-							startLat = "55.946232";
-							startLng = "-3.192472";
-							pos = "Top Left";
-						} else if (startPos == 2) {
-							startLat = "55.946232";
-							startLng = "-3.184320";
-							pos = "Top Right";
-						} else if (startPos == 3) {
-							startLat = "55.942618";
-							startLng = "-3.192472";
-							pos = "Bottom Left";
-						} else if (startPos == 4) {
-							startLat = "55.942618";
-							startLng = "-3.184320";
-							pos = "Bottom Right";
-						}
-						
-						String[] args = new String[] {d, m, y, startLat, startLng, "", "80"};
-												
-						var moves = App.runTest(args);
-						
-						if (moves == 150) {
-							timesFailed++;
-							System.out.println(pos);
-							System.out.println("------");
-						}
-						
-						if (moves > worstPerformance && moves != 150) {
-							worstPerformance = moves;
-						} else if (moves < bestPerformance) {
-							bestPerformance = moves;
-						}
-						
-						averageMoves += moves;
-						testsDone++;
-					}
-					System.out.println("------");
+		// start a flight for every day and start position
+		var dates = new ArrayList<LocalDate>();
+		var flights = new ArrayList<Future<Integer>>();
+		var executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (var date = LocalDate.of(2020, 1, 1); date.getYear() < 2022; date = date.plusDays(1)) {
+				dates.add(date);
+				for (var startPos = 0; startPos < START_POSITIONS.length; startPos++) {
+					String[] args = new String[] {String.valueOf(date.getDayOfMonth()), String.valueOf(date.getMonthValue()),
+							String.valueOf(date.getYear()), START_POSITIONS[startPos][0], START_POSITIONS[startPos][1], "", serverPort,
+							"--no-words-cache"};
+					flights.add(executor.submit(() -> App.runTest(args)));
 				}
 			}
+
+			// collect the moves of every flight, in the order they were started
+			var moves = new int[flights.size()];
+			for (var f = 0; f < flights.size(); f++) {
+				moves[f] = flights.get(f).get();
+			}
+			long stopTime = System.currentTimeMillis();
+
+			var report = buildReport(dates, moves, stopTime - startTime, threads);
+			Files.createDirectories(reportFile.toAbsolutePath().getParent());
+			Files.writeString(reportFile, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+
+			System.out.println("Runtime : " + (stopTime - startTime)/1000 + " seconds");
+			System.out.println("Average moves : " + report.get("averageMoves"));
+			System.out.println("Best performance : " + report.get("bestMoves"));
+			System.out.println("Worst successful performance : " + report.get("worstSuccessfulMoves"));
+			System.out.println("Tests done : " + report.get("flights"));
+			System.out.println("Times the drone Failed : " + report.get("failures"));
+			System.out.println("Report written to " + reportFile);
+		} finally {
+			executor.shutdown();
+			if (server != null) {
+				server.close();
+			}
 		}
-		
-		long stopTime = System.currentTimeMillis();
-		System.out.println("Runtime : " + (stopTime - startTime)/1000 + " seconds");
-		
-		averageMoves = averageMoves / testsDone;
-		
-		System.out.println("Average moves : " + averageMoves);
-		System.out.println("Best performance : " + bestPerformance);
-		System.out.println("Worst successful performance : " + worstPerformance);
-		System.out.println("Tests done : " + testsDone);
-		System.out.println("Times the drone Failed : " + timesFailed);
+	}
+
+	// collects the results of every flight into the report. A flight which took 150 moves counts as failed
+	private static Map<String, Object> buildReport(List<LocalDate> dates, int[] moves, long wallTimeMillis, int threads) {
+		var failures = 0;
+		var bestMoves = 150;
+		var worstSuccessfulMoves = 0;
+		var totalMoves = 0L;
+		var distribution = new int[151];
+		var failuresByStart = new LinkedHashMap<String, Integer>();
+		var failedFlights = new ArrayList<String>();
+		for (var name : START_NAMES) {
+			failuresByStart.put(name, 0);
+		}
+
+		for (var f = 0; f < moves.length; f++) {
+			var m = moves[f];
+			totalMoves += m;
+			distribution[m]++;
+			bestMoves = Math.min(bestMoves, m);
+			if (m == 150) {
+				var start = START_NAMES[f % START_NAMES.length];
+				failures++;
+				failuresByStart.merge(start, 1, Integer::sum);
+				failedFlights.add(dates.get(f / START_NAMES.length) + " " + start);
+			} else {
+				worstSuccessfulMoves = Math.max(worstSuccessfulMoves, m);
+			}
+		}
+
+		// the number of flights which took each number of moves, leaving out the ones no flight took
+		var moveCounts = new LinkedHashMap<String, Integer>();
+		for (var m = 0; m < distribution.length; m++) {
+			if (distribution[m] > 0) {
+				moveCounts.put(String.valueOf(m), distribution[m]);
+			}
+		}
+		var sorted = moves.clone();
+		Arrays.sort(sorted);
+
+		var report = new LinkedHashMap<String, Object>();
+		report.put("flights", moves.length);
+		report.put("threads", threads);
+		report.put("wallTimeMillis", wallTimeMillis);
+		report.put("averageMoves", (double) totalMoves / moves.length);
+		report.put("medianMoves", sorted[sorted.length / 2]);
+		report.put("p90Moves", sorted[(int) (sorted.length * 0.9)]);
+		report.put("bestMoves", bestMoves);
+		report.put("worstSuccessfulMoves", worstSuccessfulMoves);
+		report.put("failures", failures);
+		report.put("failuresByStart", failuresByStart);
+		report.put("failedFlights", failedFlights);
+		report.put("moveDistribution", moveCounts);
+		return report;
 	}
 }
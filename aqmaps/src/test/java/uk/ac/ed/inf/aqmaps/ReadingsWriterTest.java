@@ -0,0 +1,147 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.JsonPrimitive;
+import com.mapbox.geojson.BoundingBox;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Geometry;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+// checks that a readings file written feature by feature by ReadingsWriter is byte for byte what the original writer
+// made by printing FeatureCollection.toJson(), and that a failed start does not leave the file open
+public class ReadingsWriterTest {
+	private static final String[] COLOURS = {"#00ff00", "#40ff00", "#ffc000", "#ff0000", "#000000", "#aaaaaa"};
+	private static final String[] SYMBOLS = {"lighthouse", "danger", "cross", ""};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(1999);
+
+	@Test
+	public void matchesOldWriter() throws IOException {
+		var features = new ArrayList<Feature>();
+		for (var s = 0; s < 33; s++) {
+			features.add(PathFinder.makeSensorFeature(55.942617 + this.random.nextDouble() * 0.003616,
+					-3.192473 + this.random.nextDouble() * 0.008154, randomWords(),
+					COLOURS[this.random.nextInt(COLOURS.length)], SYMBOLS[this.random.nextInt(SYMBOLS.length)]));
+		}
+		// strings which gson escapes, coordinates which need rounding, and features with ids, bounding boxes, other
+		// geometries or none
+		features.add(PathFinder.makeSensorFeature(55.9444444444449, -3.18787878787871, "<a&b='c'>\"\\ ",
+				"#ffffff", "café"));
+		var numbered = Feature.fromGeometry((Geometry) Point.fromLngLat(-3.19, 55.94));
+		numbered.addProperty("reading", new JsonPrimitive(12.5));
+		numbered.addNumberProperty("battery", 99);
+		features.add(numbered);
+		features.add(Feature.fromGeometry((Geometry) Point.fromLngLat(-3.188, 55.943), null, "an-id"));
+		features.add(Feature.fromGeometry((Geometry) Point.fromLngLat(-3.188, 55.943), null, "<id>",
+				BoundingBox.fromLngLats(-3.2, 55.9, -3.1, 56.0)));
+		features.add(Feature.fromGeometry(null, null, "no-geometry"));
+		features.add(Feature.fromGeometry((Geometry) Polygon.fromLngLats(List.of(List.of(Point.fromLngLat(-3.19, 55.94),
+				Point.fromLngLat(-3.18, 55.94), Point.fromLngLat(-3.18, 55.95), Point.fromLngLat(-3.19, 55.94))))));
+		features.add(Feature.fromGeometry(null));
+
+		var path = new ArrayList<Point>();
+		for (var p = 0; p < 151; p++) {
+			path.add(Point.fromLngLat(-3.192473 + this.random.nextDouble() * 0.008154,
+					55.942617 + this.random.nextDouble() * 0.003616));
+		}
+
+		var file = this.folder.getRoot().toPath().resolve("readings.geojson");
+		try (var out = new ReadingsWriter(file)) {
+			for (var feature : features) {
+				out.writeFeature(feature);
+			}
+			out.writePath(path);
+		}
+
+		var all = new ArrayList<>(features);
+		all.add(Feature.fromGeometry((Geometry) LineString.fromLngLats(path)));
+		assertArrayEquals(oldWriter(FeatureCollection.fromFeatures(all)), Files.readAllBytes(file));
+	}
+
+	@Test
+	public void matchesOldWriterWithNoReadings() throws IOException {
+		var file = this.folder.getRoot().toPath().resolve("readings.geojson");
+		try (var out = new ReadingsWriter(file)) {
+			out.writePath(List.of(Point.fromLngLat(-3.1878, 55.9444)));
+		}
+		var path = Feature.fromGeometry((Geometry) LineString.fromLngLats(List.of(Point.fromLngLat(-3.1878, 55.9444))));
+		assertArrayEquals(oldWriter(FeatureCollection.fromFeatures(List.of(path))), Files.readAllBytes(file));
+	}
+
+	@Test
+	public void closesWriterWhenStartFails() {
+		var writer = new FailingWriter();
+		try {
+			new ReadingsWriter(writer).close();
+			fail("the FeatureCollection should not have been started");
+		} catch (IOException e) {
+			assertTrue(writer.closed);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// the bytes the original writer made by printing the whole FeatureCollection's JSON
+	private byte[] oldWriter(FeatureCollection fc) throws IOException {
+		var file = this.folder.newFile();
+		var out = new PrintWriter(file, "UTF-8");
+		out.print(fc.toJson());
+		out.close();
+		return Files.readAllBytes(file.toPath());
+	}
+
+	private String randomWords() {
+		var words = new StringBuilder();
+		for (var w = 0; w < 3; w++) {
+			if (w > 0) {
+				words.append('.');
+			}
+			for (var c = 3 + this.random.nextInt(6); c > 0; c--) {
+				words.append((char) ('a' + this.random.nextInt(26)));
+			}
+		}
+		return words.toString();
+	}
+
+	// a writer which cannot be written to, remembering whether it has been closed
+	private static final class FailingWriter extends Writer {
+		private boolean closed = false;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			throw new IOException("The disk is full");
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+// checks that 2-opt scored from the four changed edges makes the same swaps as the original 2-opt, which worked out the
+// length of the whole route again for every swap it tried
+public class TourOptimiserTest {
+	@Test
+	public void twoOptMatchesFullRouteLengthVersion() {
+		var random = new Random(20201001);
+		for (var run = 0; run < 500; run++) {
+			// between 1 and 40 sensors, spread over the same sort of area as the drone flies over
+			var sensors = 1 + random.nextInt(40);
+			var d = randomMatrix(random, sensors + 1);
+			var tour = TourOptimiser.nearestNeighbor(d);
+			if (run % 2 == 1) {
+				shuffle(random, tour);
+			}
+
+			var expected = tour.clone();
+			fullLengthTwoOpt(d, expected);
+			TourOptimiser.twoOpt(d, tour);
+
+			assertArrayEquals("2-opt of run " + run + " with " + sensors + " sensors", expected, tour);
+			assertEquals(routeLength(d, expected), routeLength(d, tour), 0);
+		}
+	}
+
+	@Test
+	public void twoOptHandlesTinyTours() {
+		var random = new Random(7);
+		for (var sensors = 0; sensors < 4; sensors++) {
+			var d = randomMatrix(random, sensors + 1);
+			var tour = TourOptimiser.nearestNeighbor(d);
+			var expected = tour.clone();
+			fullLengthTwoOpt(d, expected);
+			TourOptimiser.twoOpt(d, tour);
+			assertArrayEquals(expected, tour);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////////// HELPER FUNCTIONS /////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	// the original 2-opt: try reversing every run of sensors between i and k (never the first or last), keeping the
+	// reversal whenever the whole route comes out shorter, until a full pass keeps none
+	private static void fullLengthTwoOpt(DistanceMatrix d, int[] tour) {
+		var bestLength = routeLength(d, tour);
+		while (true) {
+			var improvementMade = false;
+			for (var i = 1; i < tour.length - 2; i++) {
+				for (var k = i + 1; k < tour.length - 1; k++) {
+					var newTour = tour.clone();
+					for (var n = i; n <= k; n++) {
+						newTour[n] = tour[k - (n - i)];
+					}
+					var newLength = routeLength(d, newTour);
+					if (newLength < bestLength) {
+						System.arraycopy(newTour, 0, tour, 0, tour.length);
+						bestLength = newLength;
+						improvementMade = true;
+					}
+				}
+			}
+			if (improvementMade == false) {
+				return;
+			}
+		}
+	}
+
+	// the length of the route from the start position through the tour and back again
+	private static double routeLength(DistanceMatrix d, int[] tour) {
+		if (tour.length == 0) {
+			return 0;
+		}
+		var length = d.get(0, tour[0]);
+		for (var i = 0; i + 1 < tour.length; i++) {
+			length += d.get(tour[i], tour[i + 1]);
+		}
+		return length + d.get(tour[tour.length - 1], 0);
+	}
+
+	// euclidean distances between 'size' random points, the first being the start position
+	private static DistanceMatrix randomMatrix(Random random, int size) {
+		var lngs = new double[size];
+		var lats = new double[size];
+		for (var i = 0; i < size; i++) {
+			lngs[i] = -3.192473 + random.nextDouble() * 0.008154;
+			lats[i] = 55.942617 + random.nextDouble() * 0.003616;
+		}
+		var distances = new double[size * size];
+		for (var i = 0; i < size; i++) {
+			for (var j = 0; j < size; j++) {
+				distances[i * size + j] = Math.hypot(lngs[i] - lngs[j], lats[i] - lats[j]);
+			}
+		}
+		return new DistanceMatrix(size, distances);
+	}
+
+	private static void shuffle(Random random, int[] tour) {
+		for (var i = tour.length - 1; i > 0; i--) {
+			var j = random.nextInt(i + 1);
+			var t = tour[i];
+			tour[i] = tour[j];
+			tour[j] = t;
+		}
+	}
+}